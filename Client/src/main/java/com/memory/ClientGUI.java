@@ -1,5 +1,6 @@
 package com.memory;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -7,45 +8,75 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Графический клиент для взаимодействия с серверами Server1 и Server2.
  * Позволяет подключаться к разным портам, отправлять команды, очищать консоль и отключаться.
+ * Журнал хранит последние client.logLines строк (по умолчанию 10000) и
+ * обновляется раз в кадр, поэтому частые рассылки не перегружают поток FX.
+ * Вкладка «Панель» ({@link DashboardView}) следит сразу за многими серверами;
+ * начальный список адресов берётся из свойства client.endpoints.
  */
 public class ClientGUI extends Application {
     private static final String HOST = "localhost";
+    private static final int LOG_LINES = Integer.getInteger("client.logLines", 10_000);
+    private static final String ENDPOINTS = System.getProperty("client.endpoints", "");
+    private static final long DASHBOARD_POLL_MS = Long.getLong("client.dashboard.pollMs", 2000);
+    private static final long DASHBOARD_WATCH_MS = Long.getLong("client.dashboard.watchMs", 1000);
 
     private Socket socket;
     private BufferedReader in;
     private PrintWriter out;
 
-    private TextArea logArea;
+    private final LogBuffer log = new LogBuffer(LOG_LINES);
+    private ListView<String> logView;
+    private CheckBox followBox;
+    private AnimationTimer logDrainer;
     private TextField portField;
     private TextField commandField;
     private Button connectButton;
     private Button sendButton;
     private Button clearButton;
     private Button disconnectButton;
+    private DashboardView dashboard;
 
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Memory Client GUI");
 
-        // Лог
-        logArea = new TextArea();
-        logArea.setEditable(false);
+        // Лог: ListView создаёт ячейки только для видимых строк
+        logView = new ListView<>(log);
+        logView.setFixedCellSize(22);
+        VBox.setVgrow(logView, Priority.ALWAYS);
+        followBox = new CheckBox("Автопрокрутка");
+        followBox.setSelected(true);
+
+        // строки из потока чтения переносятся в список пачкой раз в кадр
+        logDrainer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (log.drain() > 0 && followBox.isSelected()) {
+                    logView.scrollTo(log.size() - 1);
+                }
+            }
+        };
+        logDrainer.start();
 
         // Поле для порта и кнопка подключения
         portField = new TextField();
-        portField.setPromptText("Порт сервера (5555 или 6666)");
+        portField.setPromptText("Порт (5555 или 6666) или host:port");
         connectButton = new Button("Подключиться");
         connectButton.setOnAction(e -> connectToServer());
 
@@ -56,9 +87,9 @@ public class ClientGUI extends Application {
 
         // Кнопка очистки логов
         clearButton = new Button("Очистить консоль");
-        clearButton.setOnAction(e -> logArea.clear());
+        clearButton.setOnAction(e -> log.clear());
 
-        HBox connectionBox = new HBox(10, new Label("Порт:"), portField, connectButton, disconnectButton, clearButton);
+        HBox connectionBox = new HBox(10, new Label("Порт:"), portField, connectButton, disconnectButton, clearButton, followBox);
         connectionBox.setPadding(new Insets(10));
 
         // Поле ввода команды и кнопка отправки
@@ -73,10 +104,21 @@ public class ClientGUI extends Application {
         HBox commandBox = new HBox(10, commandField, sendButton);
         commandBox.setPadding(new Insets(10));
 
-        VBox centerBox = new VBox(10, connectionBox, logArea, commandBox);
+        VBox centerBox = new VBox(10, connectionBox, logView, commandBox);
+
+        Tab consoleTab = new Tab("Консоль", centerBox);
+        TabPane tabs = new TabPane(consoleTab);
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        try {
+            dashboard = new DashboardView(DASHBOARD_POLL_MS, DASHBOARD_WATCH_MS);
+            tabs.getTabs().add(new Tab("Панель", dashboard.content()));
+            dashboard.start(ENDPOINTS);
+        } catch (IOException e) {
+            appendLog("Панель недоступна: " + e.getMessage());
+        }
 
         BorderPane root = new BorderPane();
-        root.setCenter(centerBox);
+        root.setCenter(tabs);
 
         Scene scene = new Scene(root, 700, 450);
         primaryStage.setScene(scene);
@@ -84,21 +126,23 @@ public class ClientGUI extends Application {
     }
 
     private void connectToServer() {
-        int port;
+        InetSocketAddress address;
         try {
-            port = Integer.parseInt(portField.getText().trim());
-        } catch (NumberFormatException e) {
+            address = parseAddress(portField.getText());
+        } catch (IllegalArgumentException e) {
             appendLog("Неверный порт: " + portField.getText());
             return;
         }
+        String host = address.getHostString();
+        int port = address.getPort();
         connectButton.setDisable(true);
-        appendLog("Попытка подключения к порту " + port + "...");
+        appendLog("Попытка подключения к " + host + ":" + port + "...");
 
         new Thread(() -> {
             try {
-                socket = new Socket(HOST, port);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
+                socket = new Socket(host, port);
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
 
                 Platform.runLater(() -> {
                     appendLog("Успешно подключено к серверу на порту " + port);
@@ -121,11 +165,10 @@ public class ClientGUI extends Application {
         try {
             String line;
             while ((line = in.readLine()) != null) {
-                String msg = line;
-                Platform.runLater(() -> appendLog("< Сервер: " + msg));
+                appendLog("< Сервер: " + line);
             }
         } catch (IOException e) {
-            Platform.runLater(() -> appendLog("Соединение прервано."));
+            appendLog("Соединение прервано.");
         } finally {
             Platform.runLater(this::disconnect);
         }
@@ -167,13 +210,28 @@ public class ClientGUI extends Application {
         disconnectButton.setDisable(true);
     }
 
+    /**
+     * Разбирает "порт" или "host:port"; без хоста — {@value #HOST}.
+     * @return неразрешённый адрес: DNS будет запрошен при подключении
+     * @throws IllegalArgumentException если порт не число или вне диапазона
+     */
+    static InetSocketAddress parseAddress(String text) {
+        String s = text.trim();
+        int colon = s.lastIndexOf(':');
+        String host = colon > 0 ? s.substring(0, colon) : HOST;
+        return InetSocketAddress.createUnresolved(host, Integer.parseInt(s.substring(colon + 1)));
+    }
+
+    /** Можно вызывать из любого потока: строка появится в журнале со следующим кадром. */
     private void appendLog(String message) {
-        logArea.appendText(message + "\n");
+        log.offer(message);
     }
 
     @Override
     public void stop() throws Exception {
         super.stop();
+        logDrainer.stop();
+        if (dashboard != null) dashboard.stop();
         disconnect();
     }
 
@@ -0,0 +1,420 @@
+package com.memory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Соединения панели мониторинга: все серверы обслуживаются одним потоком
+ * через один Selector. Каждое соединение переходит в двоичный режим
+ * ({@link BinaryProtocol}), запрашивает и окно, и swap — по ответам видно,
+ * какой сервис на этом порту, — и подписывается на его рассылку. Запросы
+ * повторяются каждые pollMs как проверка связи; при обрыве, отказе или
+ * молчании соединение переоткрывается с экспоненциальной задержкой.
+ * <p>
+ * Поток UI читает только неизменяемые {@link Status} через {@link Endpoint#status()}.
+ */
+final class DashboardLoop implements Runnable {
+    private static final byte[] OVERLOADED = "переполнен".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RETRY_AFTER = "через".getBytes(StandardCharsets.UTF_8);
+    private static final long MAX_RETRY_AFTER_SEC = 3600;
+    /** Ожидание приветствия; больше очереди допуска сервера (server2.admissionWaitMs, 5 с). */
+    private static final long CONNECT_TIMEOUT_MS = Long.getLong("client.dashboard.connectTimeoutMs", 10_000);
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final int MAX_FRAME = 16 * 1024;
+
+    /** Снимок состояния сервера для таблицы; -1 — значение ещё не известно. */
+    record Status(String address, String state, long width, long height,
+                  long swapTotal, long swapFree, long updatedAt, int reconnects, String error) {
+    }
+
+    /** Сервер панели. Поля, кроме status, принадлежат потоку цикла. */
+    static final class Endpoint {
+        private final String host;
+        private final int port;
+        private final String address;
+        private volatile Status status;
+
+        private InetSocketAddress resolved;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_FRAME);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private boolean greeted;
+        private boolean removed;
+        private String state = "ожидание";
+        private String error = "";
+        private long connectStarted;
+        private long nextAttemptAt;
+        private long backoffMs = MIN_BACKOFF_MS;
+        private long lastFrameAt;
+        private long nextPollAt;
+        private boolean window;
+        private boolean swap;
+        private long width = -1;
+        private long height = -1;
+        private long swapTotal = -1;
+        private long swapFree = -1;
+        private long updatedAt;
+        private int reconnects;
+
+        private Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+            this.address = host + ":" + port;
+            publish();
+        }
+
+        Status status() {
+            return status;
+        }
+
+        private void publish() {
+            status = new Status(address, state, width, height, swapTotal, swapFree, updatedAt, reconnects, error);
+        }
+    }
+
+    private final long pollMs;
+    private final long watchMs;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param pollMs  период запросов-проверок
+     * @param watchMs интервал подписки на swap
+     */
+    DashboardLoop(long pollMs, long watchMs) throws IOException {
+        this.pollMs = Math.max(100, pollMs);
+        this.watchMs = Math.max(1, watchMs);
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "Dashboard-IO");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /** Добавляет сервер; подключение начнётся в потоке цикла. Можно вызывать из любого потока. */
+    Endpoint add(String host, int port) {
+        Endpoint e = new Endpoint(host, port);
+        submit(() -> endpoints.add(e));
+        return e;
+    }
+
+    void remove(Endpoint e) {
+        submit(() -> {
+            e.removed = true;
+            endpoints.remove(e);
+            disconnect(e);
+        });
+    }
+
+    private void submit(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                long wait = tick(System.currentTimeMillis());
+                selector.select(Math.max(1, wait));
+                var it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    Endpoint e = (Endpoint) k.attachment();
+                    if (k.isValid() && k.isConnectable()) finishConnect(e);
+                    if (k.isValid() && k.isReadable()) read(e);
+                    if (k.isValid() && k.isWritable()) flush(e);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка Selector панели: " + e.getMessage());
+        } finally {
+            for (Endpoint e : endpoints) disconnect(e);
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Подключения, проверки связи и тайм-ауты, наступившие к моменту now.
+     * @return через сколько миллисекунд нужно проверить снова
+     */
+    private long tick(long now) {
+        long next = now + pollMs;
+        for (Endpoint e : endpoints) {
+            if (e.channel == null) {
+                if (now >= e.nextAttemptAt) {
+                    connect(e, now);
+                } else {
+                    next = Math.min(next, e.nextAttemptAt);
+                }
+            } else if (!e.greeted) {
+                if (now - e.connectStarted > CONNECT_TIMEOUT_MS) {
+                    fail(e, "нет ответа при подключении", now);
+                } else {
+                    next = Math.min(next, e.connectStarted + CONNECT_TIMEOUT_MS);
+                }
+            } else if (now - e.lastFrameAt > 3 * pollMs) {
+                fail(e, "сервер не отвечает", now);
+            } else if (now >= e.nextPollAt) {
+                if (e.window) send(e, request(BinaryProtocol.GET_WINDOW));
+                if (e.swap) send(e, request(BinaryProtocol.GET_SWAP));
+                e.nextPollAt = now + pollMs;
+                next = Math.min(next, e.nextPollAt);
+            } else {
+                next = Math.min(next, e.nextPollAt);
+            }
+        }
+        return next - now;
+    }
+
+    private void connect(Endpoint e, long now) {
+        e.connectStarted = now;
+        e.state = "подключение";
+        e.publish();
+        try {
+            // адрес разрешается один раз и заново только после ошибки: DNS блокирует поток цикла
+            if (e.resolved == null || e.resolved.isUnresolved()) e.resolved = new InetSocketAddress(e.host, e.port);
+            SocketChannel ch = SocketChannel.open();
+            e.channel = ch;
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            boolean connected = ch.connect(e.resolved);
+            e.key = ch.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, e);
+            // переключение и оба запроса уходят сразу, сервер разберёт их после приветствия
+            send(e, "/binary\n".getBytes(StandardCharsets.UTF_8));
+            send(e, request(BinaryProtocol.GET_WINDOW));
+            send(e, request(BinaryProtocol.GET_SWAP));
+        } catch (IOException | RuntimeException ex) {
+            e.resolved = null;
+            fail(e, String.valueOf(ex.getMessage()), now);
+        }
+    }
+
+    private void finishConnect(Endpoint e) {
+        try {
+            e.channel.finishConnect();
+            e.key.interestOps(e.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException ex) {
+            e.resolved = null;
+            fail(e, String.valueOf(ex.getMessage()), System.currentTimeMillis());
+        }
+    }
+
+    private static byte[] request(byte command, long... args) {
+        ByteBuffer b = ByteBuffer.allocate(BinaryProtocol.LENGTH_BYTES + 1 + args.length * Long.BYTES);
+        b.putInt(1 + args.length * Long.BYTES).put(command);
+        for (long a : args) b.putLong(a);
+        return b.array();
+    }
+
+    private void send(Endpoint e, byte[] bytes) {
+        e.out.add(ByteBuffer.wrap(bytes));
+        if (e.key != null && e.key.isValid() && e.channel.isConnected()) flush(e);
+    }
+
+    private void flush(Endpoint e) {
+        try {
+            ByteBuffer b;
+            while ((b = e.out.peek()) != null) {
+                e.channel.write(b);
+                if (b.hasRemaining()) {
+                    e.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                e.out.poll();
+            }
+            e.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            fail(e, String.valueOf(ex.getMessage()), System.currentTimeMillis());
+        }
+    }
+
+    private void read(Endpoint e) {
+        long now = System.currentTimeMillis();
+        int n;
+        try {
+            n = e.channel.read(e.in);
+        } catch (IOException ex) {
+            fail(e, String.valueOf(ex.getMessage()), now);
+            return;
+        }
+        if (n < 0) {
+            fail(e, "соединение закрыто сервером", now);
+            return;
+        }
+        ByteBuffer in = e.in;
+        in.flip();
+        byte[] arr = in.array();
+        int p = in.position();
+        int limit = in.limit();
+        if (!e.greeted) {
+            int nl = p;
+            while (nl < limit && arr[nl] != '\n') nl++;
+            if (nl == limit) {
+                in.position(p).compact();
+                if (!in.hasRemaining()) fail(e, "слишком длинное приветствие", now);
+                return;
+            }
+            if (contains(arr, p, nl - p, OVERLOADED)) {
+                long retryAfter = retryAfterMs(arr, p, nl - p);
+                fail(e, "сервер переполнен", now);
+                // подсказка сервера важнее собственной задержки, если она длиннее
+                if (now + retryAfter > e.nextAttemptAt) {
+                    e.nextAttemptAt = now + retryAfter;
+                    e.state = "повтор через " + retryAfter / 1000 + " с";
+                    e.publish();
+                }
+                return;
+            }
+            e.greeted = true;
+            e.lastFrameAt = now;
+            e.nextPollAt = now + pollMs;
+            p = nl + 1;
+        }
+        while (limit - p >= BinaryProtocol.LENGTH_BYTES) {
+            int len = (arr[p] & 0xFF) << 24 | (arr[p + 1] & 0xFF) << 16 | (arr[p + 2] & 0xFF) << 8 | (arr[p + 3] & 0xFF);
+            if (len < 2 || len > MAX_FRAME - BinaryProtocol.LENGTH_BYTES) {
+                fail(e, "неверный кадр", now);
+                return;
+            }
+            if (limit - p - BinaryProtocol.LENGTH_BYTES < len) break;
+            onFrame(e, arr, p + BinaryProtocol.LENGTH_BYTES, len, now);
+            if (e.channel == null) return;
+            p += BinaryProtocol.LENGTH_BYTES + len;
+        }
+        in.position(p).compact();
+        e.publish();
+    }
+
+    /** Кадр ответа: команда, статус, числа. */
+    private void onFrame(Endpoint e, byte[] buf, int off, int len, long now) {
+        byte command = buf[off];
+        boolean ok = buf[off + 1] == BinaryProtocol.OK;
+        int values = (len - 2) / Long.BYTES;
+        int v = off + 2;
+        e.lastFrameAt = now;
+        switch (command) {
+            case BinaryProtocol.HELLO -> {
+                e.backoffMs = MIN_BACKOFF_MS;
+                e.state = "подключено";
+                e.error = "";
+            }
+            case BinaryProtocol.GET_WINDOW, BinaryProtocol.RESIZE_EVENT -> {
+                if (!ok || values < 2) return;
+                if (!e.window) {
+                    e.window = true;
+                    send(e, request(BinaryProtocol.SUBSCRIBE));
+                }
+                e.width = readLong(buf, v);
+                e.height = readLong(buf, v + Long.BYTES);
+                e.updatedAt = now;
+            }
+            case BinaryProtocol.GET_SWAP, BinaryProtocol.SWAP_EVENT -> {
+                if (!ok || values < 2) return;
+                if (!e.swap) {
+                    e.swap = true;
+                    send(e, request(BinaryProtocol.WATCH_SWAP, watchMs));
+                }
+                e.swapTotal = readLong(buf, v);
+                e.swapFree = readLong(buf, v + Long.BYTES);
+                e.updatedAt = now;
+            }
+            default -> { }
+        }
+    }
+
+    /** Закрывает соединение и планирует повтор со случайным разбросом, чтобы серверы не получали волну подключений. */
+    private void fail(Endpoint e, String reason, long now) {
+        disconnect(e);
+        if (e.removed) return;
+        long delay = e.backoffMs + ThreadLocalRandom.current().nextLong(e.backoffMs / 2 + 1);
+        e.nextAttemptAt = now + delay;
+        e.backoffMs = Math.min(MAX_BACKOFF_MS, e.backoffMs * 2);
+        e.reconnects++;
+        e.state = "повтор через " + (delay + 999) / 1000 + " с";
+        e.error = reason;
+        e.publish();
+    }
+
+    private static void disconnect(Endpoint e) {
+        if (e.key != null) e.key.cancel();
+        if (e.channel != null) {
+            try { e.channel.close(); } catch (IOException ignored) {}
+        }
+        e.channel = null;
+        e.key = null;
+        e.out.clear();
+        e.in.clear();
+        e.greeted = false;
+        e.window = false;
+        e.swap = false;
+    }
+
+    /**
+     * Подсказка из отказа «Попробуйте через N с.»: число после «через», в
+     * миллисекундах, не больше часа; 0, если подсказки нет. Перед отказом
+     * может стоять метка времени, поэтому первое число в строке не годится.
+     */
+    static long retryAfterMs(byte[] buf, int off, int len) {
+        int end = off + len;
+        int i = indexOf(buf, off, len, RETRY_AFTER);
+        if (i < 0) return 0;
+        i += RETRY_AFTER.length;
+        while (i < end && buf[i] == ' ') i++;
+        long sec = 0;
+        int digits = 0;
+        while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+            if (sec < MAX_RETRY_AFTER_SEC) sec = sec * 10 + (buf[i] - '0');
+            i++;
+            digits++;
+        }
+        return digits == 0 ? 0 : Math.min(sec, MAX_RETRY_AFTER_SEC) * 1000;
+    }
+
+    private static long readLong(byte[] buf, int off) {
+        long v = 0;
+        for (int i = 0; i < Long.BYTES; i++) v = v << 8 | (buf[off + i] & 0xFF);
+        return v;
+    }
+
+    private static boolean contains(byte[] buf, int off, int len, byte[] needle) {
+        return indexOf(buf, off, len, needle) >= 0;
+    }
+
+    private static int indexOf(byte[] buf, int off, int len, byte[] needle) {
+        outer:
+        for (int i = off; i <= off + len - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,160 @@
+package com.memory;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Function;
+
+/**
+ * Панель мониторинга многих серверов: таблица с окном и swap каждого
+ * адреса. Сеть обслуживает {@link DashboardLoop} в одном потоке, таблица
+ * сверяется с его снимками раз в кадр и меняет только изменившиеся строки.
+ */
+final class DashboardView {
+    /** Строка таблицы: сервер и последний показанный снимок его состояния. */
+    private static final class Row {
+        final DashboardLoop.Endpoint endpoint;
+        final ObjectProperty<DashboardLoop.Status> status;
+
+        Row(DashboardLoop.Endpoint endpoint) {
+            this.endpoint = endpoint;
+            this.status = new SimpleObjectProperty<>(endpoint.status());
+        }
+    }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final DashboardLoop loop;
+    private final ObservableList<Row> rows = FXCollections.observableArrayList();
+    private final TableView<Row> table = new TableView<>(rows);
+    private final TextField addressField = new TextField();
+    private final Label message = new Label();
+    /** Буфер текста ячеек; таблица запрашивает значения только из потока JavaFX. */
+    private final ResponseEncoder cellText = new ResponseEncoder(CachedClock.SYSTEM, 64);
+    private final AnimationTimer refresher = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            refresh();
+        }
+    };
+
+    DashboardView(long pollMs, long watchMs) throws IOException {
+        this.loop = new DashboardLoop(pollMs, watchMs);
+    }
+
+    /** Запускает поток соединений и добавляет адреса вида "host:port, host:port". */
+    void start(String initialEndpoints) {
+        loop.start();
+        refresher.start();
+        if (initialEndpoints != null && !initialEndpoints.isBlank()) addAll(initialEndpoints);
+    }
+
+    void stop() {
+        refresher.stop();
+        loop.stop();
+    }
+
+    Node content() {
+        table.getColumns().add(column("Сервер", 150, DashboardLoop.Status::address));
+        table.getColumns().add(column("Состояние", 130, DashboardLoop.Status::state));
+        table.getColumns().add(column("Окно", 90, s -> s.width() < 0 ? "—" : s.width() + "×" + s.height()));
+        table.getColumns().add(column("Swap занято", 160, s -> s.swapTotal() < 0 ? "—"
+                : cell().appendSize(s.swapTotal() - s.swapFree()).append(" / ").appendSize(s.swapTotal()).toString()));
+        table.getColumns().add(column("Swap, %", 70, s -> {
+            if (s.swapTotal() <= 0) return "—";
+            long permille = (s.swapTotal() - s.swapFree()) * 1000 / s.swapTotal();
+            return cell().append(permille / 10).append('.').append(permille % 10).toString();
+        }));
+        table.getColumns().add(column("Обновлено", 80, s -> s.updatedAt() == 0 ? "—"
+                : TIME.format(Instant.ofEpochMilli(s.updatedAt()))));
+        table.getColumns().add(column("Повторы", 70, s -> String.valueOf(s.reconnects())));
+        table.getColumns().add(column("Ошибка", 200, DashboardLoop.Status::error));
+        table.setPlaceholder(new Label("Добавьте адреса серверов, например localhost:5555, localhost:6666"));
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        addressField.setPromptText("host:port, host:port ...");
+        HBox.setHgrow(addressField, Priority.ALWAYS);
+        addressField.setOnAction(e -> addFromField());
+        Button addButton = new Button("Добавить");
+        addButton.setOnAction(e -> addFromField());
+        Button removeButton = new Button("Удалить выбранный");
+        removeButton.setOnAction(e -> removeSelected());
+
+        HBox controls = new HBox(10, new Label("Адреса:"), addressField, addButton, removeButton);
+        VBox box = new VBox(10, controls, table, message);
+        box.setPadding(new Insets(10));
+        return box;
+    }
+
+    private static TableColumn<Row, String> column(String title, double width,
+                                                   Function<DashboardLoop.Status, String> value) {
+        TableColumn<Row, String> c = new TableColumn<>(title);
+        c.setPrefWidth(width);
+        c.setCellValueFactory(cell -> {
+            ObjectProperty<DashboardLoop.Status> status = cell.getValue().status;
+            return Bindings.createStringBinding(() -> value.apply(status.get()), status);
+        });
+        return c;
+    }
+
+    private void addFromField() {
+        if (addAll(addressField.getText())) addressField.clear();
+    }
+
+    private boolean addAll(String text) {
+        for (String part : text.split("[,\\s]+")) {
+            if (part.isEmpty()) continue;
+            InetSocketAddress a;
+            try {
+                a = ClientGUI.parseAddress(part);
+            } catch (IllegalArgumentException e) {
+                message.setText("Неверный адрес: " + part);
+                return false;
+            }
+            rows.add(new Row(loop.add(a.getHostString(), a.getPort())));
+        }
+        message.setText("Серверов: " + rows.size());
+        return true;
+    }
+
+    private void removeSelected() {
+        Row row = table.getSelectionModel().getSelectedItem();
+        if (row == null) return;
+        loop.remove(row.endpoint);
+        rows.remove(row);
+        message.setText("Серверов: " + rows.size());
+    }
+
+    /** Обновляет строки, чей снимок сменился с прошлого кадра. */
+    private void refresh() {
+        for (Row row : rows) {
+            DashboardLoop.Status s = row.endpoint.status();
+            if (row.status.get() != s) row.status.set(s);
+        }
+    }
+
+    /** Очищенный кодировщик для текста одной ячейки; размеры форматирует общий {@link ResponseEncoder#appendSize}. */
+    private ResponseEncoder cell() {
+        cellText.reset();
+        return cellText;
+    }
+}
@@ -0,0 +1,103 @@
+package com.memory;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Журнал клиента фиксированного размера для {@link javafx.scene.control.ListView}.
+ * Строки из любых потоков складываются в {@link #offer(String)} и переносятся
+ * в видимый список пачкой вызовом {@link #drain()} из потока FX, обычно раз в кадр.
+ * Хранятся только последние capacity строк: кольцевой буфер без сдвига массива,
+ * старые строки вытесняются новыми.
+ */
+final class LogBuffer extends ObservableListBase<String> {
+    private final String[] ring;
+    private int head;   // индекс самой старой строки
+    private int size;
+
+    /** Строки, ещё не показанные в списке; доступ под блокировкой на самой очереди. */
+    private final ArrayDeque<String> incoming = new ArrayDeque<>();
+
+    LogBuffer(int capacity) {
+        this.ring = new String[Math.max(1, capacity)];
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    /** Добавляет строку из любого потока; при отставании UI лишнее вытесняется ещё до показа. */
+    void offer(String line) {
+        synchronized (incoming) {
+            if (incoming.size() == ring.length) incoming.pollFirst();
+            incoming.addLast(line);
+        }
+    }
+
+    /**
+     * Переносит накопленные строки в список одним событием изменения.
+     * Только для потока FX.
+     * @return число добавленных строк
+     */
+    int drain() {
+        String[] batch;
+        synchronized (incoming) {
+            if (incoming.isEmpty()) return 0;
+            batch = incoming.toArray(new String[0]);
+            incoming.clear();
+        }
+        int cap = ring.length;
+        int evict = Math.max(0, size + batch.length - cap);
+        beginChange();
+        if (evict > 0) {
+            List<String> removed = new ArrayList<>(evict);
+            for (int i = 0; i < evict; i++) {
+                int idx = (head + i) % cap;
+                removed.add(ring[idx]);
+                ring[idx] = null;
+            }
+            head = (head + evict) % cap;
+            size -= evict;
+            nextRemove(0, removed);
+        }
+        int from = size;
+        for (String line : batch) {
+            ring[(head + size) % cap] = line;
+            size++;
+        }
+        nextAdd(from, size);
+        endChange();
+        return batch.length;
+    }
+
+    /** Очищает список и ещё не показанные строки. Только для потока FX. */
+    @Override
+    public void clear() {
+        synchronized (incoming) {
+            incoming.clear();
+        }
+        if (size == 0) return;
+        List<String> removed = new ArrayList<>(this);
+        Arrays.fill(ring, null);
+        head = 0;
+        size = 0;
+        beginChange();
+        nextRemove(0, removed);
+        endChange();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return ring[(head + index) % ring.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,36 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DashboardLoopTest {
+
+    private static long retryAfter(String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        return DashboardLoop.retryAfterMs(b, 0, b.length);
+    }
+
+    @Test
+    void rawRejection() {
+        assertEquals(5000, retryAfter("Сервер переполнен. Попробуйте через 5 с."));
+    }
+
+    @Test
+    void timestampedRejectionUsesNumberAfterHint() {
+        assertEquals(7000, retryAfter("2026-10-17 12:00:00 Сервер переполнен. Попробуйте через 7 с."));
+    }
+
+    @Test
+    void missingHint() {
+        assertEquals(0, retryAfter("2026-10-17 12:00:00 Сервер переполнен."));
+        assertEquals(0, retryAfter("Сервер переполнен. Попробуйте через с."));
+    }
+
+    @Test
+    void hugeHintIsCappedAtHour() {
+        assertEquals(3_600_000, retryAfter("Сервер переполнен. Попробуйте через 99999999999999999999 с."));
+    }
+}
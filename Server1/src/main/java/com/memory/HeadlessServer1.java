@@ -0,0 +1,30 @@
+package com.memory;
+
+import java.util.Arrays;
+
+/**
+ * Запуск Server1 без JavaFX: окно существует только как {@link WindowModel}.
+ * Начальное состояние задаётся свойствами server1.width, server1.height,
+ * server1.title; размер меняется командой /resize.
+ */
+public final class HeadlessServer1 {
+
+    private HeadlessServer1() { }
+
+    public static void main(String[] args) {
+        WindowModel model = new WindowModel(
+                Integer.getInteger("server1.width", 400),
+                Integer.getInteger("server1.height", 200),
+                System.getProperty("server1.title", "Server1"));
+        WindowServer server = new WindowServer(model);
+        if (!server.start()) {
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "Server1-Shutdown"));
+    }
+
+    /** Запрошен ли безоконный режим: флаг --headless или -Dserver1.headless=true. */
+    static boolean requested(String[] args) {
+        return Boolean.getBoolean("server1.headless") || Arrays.asList(args).contains("--headless");
+    }
+}
@@ -0,0 +1,188 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Рассылка событий resize подписчикам без блокировки источника.
+ * <p>
+ * Сообщение кодируется в байты один раз, и этот массив разделяется всеми
+ * подписчиками. У каждого подписчика есть слот ожидающего кадра: новое
+ * событие вытесняет ещё не отправленное, поэтому отстающий клиент получает
+ * только последний размер. Запись в сокеты выполняет отдельный пул потоков;
+ * подписчик, пропустивший слишком много событий подряд, отключается.
+ * Зависшую запись ловит сторожевой поток независимо от новых событий:
+ * закрытие сокета освобождает поток пула для остальных подписчиков.
+ */
+final class ResizeBroadcaster {
+    private final ExecutorService writers;
+    private final int maxLag;
+    private final long writeTimeoutNanos;
+    private final Map<Object, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledExecutorService watchdog;
+
+    ResizeBroadcaster(ExecutorService writers, int maxLag, long writeTimeoutMillis) {
+        this.writers = writers;
+        this.maxLag = maxLag;
+        this.writeTimeoutNanos = writeTimeoutMillis * 1_000_000L;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Server1-WriteWatchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(10, Math.min(1000, writeTimeoutMillis / 4));
+        watchdog.scheduleAtFixedRate(this::dropStalled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Останавливает сторожевой поток; пул записи принадлежит вызывающему. */
+    void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /** Отключает подписчиков, чья запись идёт дольше тайм-аута. */
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber s : subscribers.values()) {
+            long started = s.writeStarted;
+            if (started != 0 && now - started > writeTimeoutNanos) s.drop("запись зависла");
+        }
+    }
+
+    /**
+     * @param owner     ключ подписки (обработчик клиента)
+     * @param writeLock блокировка, под которой пишутся остальные ответы
+     *                  в этот же сокет, чтобы строки не перемешивались
+     * @return false, если подписка уже была
+     */
+    boolean subscribe(Object owner, Socket socket, Lock writeLock) throws IOException {
+        return subscribers.putIfAbsent(owner, new Subscriber(socket, writeLock)) == null;
+    }
+
+    boolean unsubscribe(Object owner) {
+        Subscriber s = subscribers.remove(owner);
+        if (s == null) return false;
+        s.discard();
+        return true;
+    }
+
+    boolean isSubscribed(Object owner) {
+        return subscribers.containsKey(owner);
+    }
+
+    int size() {
+        return subscribers.size();
+    }
+
+    /** Сколько подписчиков сейчас ждут отправки кадра. */
+    int queued() {
+        return queued.get();
+    }
+
+    long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /** Сколько подписчиков отключено за отставание или ошибку записи. */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /** Ставит уже закодированный кадр всем подписчикам; не блокируется на сети. */
+    void publish(byte[] frame) {
+        long now = System.nanoTime();
+        for (Subscriber s : subscribers.values()) {
+            s.offer(frame, now);
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final Lock writeLock;
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /** Сколько событий подряд вытеснено неотправленными; издатели могут идти параллельно. */
+        private final AtomicInteger lag = new AtomicInteger();
+        private volatile long writeStarted;
+
+        Subscriber(Socket socket, Lock writeLock) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+            this.writeLock = writeLock;
+        }
+
+        void offer(byte[] frame, long now) {
+            long started = writeStarted;
+            if (started != 0 && now - started > writeTimeoutNanos) {
+                drop("запись зависла");
+                return;
+            }
+            byte[] previous = pending.getAndSet(frame);
+            if (previous == null) queued.incrementAndGet();
+            int missed = previous == null ? 0 : lag.incrementAndGet();
+            if (missed > maxLag) {
+                drop("отстал на " + missed + " событий");
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                byte[] frame = pending.getAndSet(null);
+                if (frame == null) {
+                    scheduled.set(false);
+                    // событие могло прийти между getAndSet и сбросом флага
+                    if (pending.get() == null || !scheduled.compareAndSet(false, true)) return;
+                    continue;
+                }
+                queued.decrementAndGet();
+                lag.set(0);
+                writeStarted = System.nanoTime();
+                writeLock.lock();
+                try {
+                    out.write(frame);
+                    out.flush();
+                    bytesSent.add(frame.length);
+                } catch (IOException e) {
+                    drop(e.getMessage());
+                    return;
+                } finally {
+                    writeLock.unlock();
+                    writeStarted = 0;
+                }
+            }
+        }
+
+        void discard() {
+            if (pending.getAndSet(null) != null) queued.decrementAndGet();
+        }
+
+        private void drop(String reason) {
+            if (!subscribers.values().remove(this)) return;
+            discard();
+            dropped.increment();
+            System.err.println("Подписчик " + socket.getRemoteSocketAddress() + " отключён: " + reason);
+            // закрытие сокета прерывает зависшую запись и чтение в обработчике клиента
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -12,40 +12,24 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.BindException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 
+/**
+ * Оконный Server1. Окно лишь отражает {@link WindowModel}: изменения размера
+ * окна записываются в модель, а /rename и /resize из модели применяются к окну.
+ * Сеть обслуживает {@link WindowServer}; без дисплея используйте
+ * {@link HeadlessServer1} или флаг --headless.
+ */
 public class Server1 extends Application {
-    public static final int PORT = 5555;
-    public static final int MAX_CLIENTS = 5;
-
-    private ServerSocket serverSocket;
-    private ExecutorService clientPool;
-    private final Semaphore clientSemaphore = new Semaphore(MAX_CLIENTS);
+    private final WindowModel model = new WindowModel(400, 200, "Server1");
+    private final WindowServer server = new WindowServer(model);
     private Stage mainStage;
 
-    private final AtomicInteger activeClients = new AtomicInteger(0);
-    private final List<ClientHandler> handlers = new CopyOnWriteArrayList<>();
-    private final List<PrintWriter> resizeSubscribers = new CopyOnWriteArrayList<>();
-
-    private static final DateTimeFormatter TIMESTAMP_FMT =
-            DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
-
     public static void main(String[] args) {
+        if (HeadlessServer1.requested(args)) {
+            HeadlessServer1.main(args);
+            return;
+        }
         launch(args);
     }
 
@@ -60,157 +44,29 @@ public class Server1 extends Application {
         VBox root = new VBox(10, label, stopBtn);
         root.setAlignment(Pos.CENTER);
         stage.setScene(new Scene(root, 400, 200));
-        stage.setTitle("Server1");
+        stage.setTitle(model.state().title());
         stage.show();
+        model.resize((int) stage.getWidth(), (int) stage.getHeight());
 
-        addResizeListener((w, h) -> {
-            String msg = String.format("Размер окна: %d×%d", w.intValue(), h.intValue());
-            broadcastToSubscribers(msg);
-        });
-
-        startServer();
-    }
-
-    private void startServer() {
-        clientPool = Executors.newCachedThreadPool();
-        new Thread(() -> {
-            try {
-                serverSocket = new ServerSocket(PORT);
-                System.out.println("Server1 listening on port " + PORT);
-            } catch (BindException be) {
-                System.err.println("Не удалось запустить сервер: порт " + PORT + " уже занят. Возможно, сервер уже запущен.");
-                Platform.runLater(Platform::exit);
-                return;
-            } catch (IOException ioe) {
-                System.err.println("Ошибка при создании ServerSocket: " + ioe.getMessage());
-                Platform.runLater(Platform::exit);
-                return;
-            }
+        model.onRename(s -> Platform.runLater(() -> stage.setTitle(s.title())));
+        model.onResize(s -> Platform.runLater(() -> {
+            if ((int) stage.getWidth() != s.width()) stage.setWidth(s.width());
+            if ((int) stage.getHeight() != s.height()) stage.setHeight(s.height());
+        }));
+        addResizeListener((w, h) -> model.resize(w.intValue(), h.intValue()));
 
-            while (!serverSocket.isClosed()) {
-                try {
-                    Socket client = serverSocket.accept();
-                    if (!clientSemaphore.tryAcquire()) {
-                        try (PrintWriter w = new PrintWriter(client.getOutputStream(), true)) {
-                            w.println(timestamp() + " Сервер переполнен. Попробуйте позже.");
-                        }
-                        client.close();
-                        continue;
-                    }
-                    activeClients.incrementAndGet();
-                    ClientHandler h = new ClientHandler(client);
-                    handlers.add(h);
-                    clientPool.execute(h);
-                } catch (IOException e) {
-                    if (!serverSocket.isClosed()) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }, "Server-Acceptor").start();
+        if (!server.start()) {
+            Platform.exit();
+        }
     }
 
-
     @Override
     public void stop() {
-        stopServer();
-    }
-
-    private class ClientHandler implements Runnable {
-        private final Socket socket;
-        private PrintWriter out;
-
-        ClientHandler(Socket socket) {
-            this.socket = socket;
-        }
-
-        @Override
-        public void run() {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-                out = new PrintWriter(socket.getOutputStream(), true);
-                send("Подключено. /subscribe, /unsubscribe, /getwindow, /rename <name>, /exit");
-                String id = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    String cmd = line.trim();
-                    System.out.println("[" + id + "] -> " + cmd);
-                    if ("/exit".equalsIgnoreCase(cmd)) {
-                        send("До свидания!");
-                        break;
-                    }
-                    handle(cmd);
-                }
-            } catch (IOException e) {
-                System.err.println("Client error: " + e.getMessage());
-            } finally {
-                disconnect();
-            }
-        }
-
-        private void handle(String cmd) {
-            if (!cmd.startsWith("/")) {
-                send("Неверная команда. Введите /help");
-                return;
-            }
-            String[] parts = cmd.split("\\s+", 2);
-            String base = parts[0].toLowerCase();
-            switch (base) {
-                case "/subscribe":
-                    if (!resizeSubscribers.contains(out)) resizeSubscribers.add(out);
-                    send("Подписка на resize оформлена");
-                    break;
-                case "/unsubscribe":
-                    resizeSubscribers.remove(out);
-                    send("Подписка отменена");
-                    break;
-                case "/getwindow":
-                    send(String.format("Размер окна: %d×%d",
-                            (int)mainStage.getWidth(), (int)mainStage.getHeight()));
-                    break;
-                case "/rename":
-                    if (parts.length < 2 || parts[1].isBlank()) {
-                        send("Ошибка: имя не может быть пустым");
-                    } else {
-                        String name = parts[1];
-                        try {
-                            Platform.runLater(() -> mainStage.setTitle(name));
-                            send("Успех: заголовок изменён на '" + name + "'");
-                        } catch (Exception ex) {
-                            send("Ошибка изменения заголовка: " + ex.getMessage());
-                        }
-                    }
-                    break;
-                case "/help":
-                    send("Команды: /subscribe, /unsubscribe, /getwindow, /rename <name>, /exit");
-                    break;
-                default:
-                    send("Неизвестная команда: " + base);
-            }
-        }
-
-        private void send(String msg) {
-            out.println(timestamp() + " " + msg);
-        }
-
-        private void disconnect() {
-            if (out != null) resizeSubscribers.remove(out);
-            handlers.remove(this);
-            clientSemaphore.release();
-            activeClients.decrementAndGet();
-            try { socket.close(); } catch (IOException ignored) {}
-            System.out.println("Client disconnected. Active: " + activeClients.get());
-        }
-    }
-
-    private void broadcastToSubscribers(String msg) {
-        String withTs = timestamp() + " " + msg;
-        for (PrintWriter pw : new CopyOnWriteArrayList<>(resizeSubscribers)) {
-            pw.println(withTs);
-        }
+        server.stop();
     }
 
     private void stopServer() {
-        try { serverSocket.close(); clientPool.shutdownNow(); } catch (IOException ignored) {}
+        server.stop();
         Platform.exit();
     }
 
@@ -221,8 +77,4 @@ public class Server1 extends Application {
         mainStage.widthProperty().addListener(cl);
         mainStage.heightProperty().addListener(cl);
     }
-
-    private static String timestamp() {
-        return LocalDateTime.now().format(TIMESTAMP_FMT);
-    }
 }
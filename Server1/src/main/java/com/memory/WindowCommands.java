@@ -0,0 +1,227 @@
+package com.memory;
+
+import java.io.IOException;
+
+/**
+ * Команды Server1 над {@link WindowModel}, не привязанные к транспорту:
+ * их выполняют и блокирующий {@link WindowServer}, и любой другой сервер,
+ * реализующий {@link Session}. Рассылка resize остаётся за транспортом,
+ * здесь только готовые кадры для неё ({@link #resizeLine}, {@link #resizeFrame}).
+ */
+final class WindowCommands {
+    static final byte[] CONNECTED = ResponseEncoder.utf8(
+            "Подключено. /subscribe, /unsubscribe, /getwindow, /rename <name>, /resize <w> <h>, /stats, /exit");
+    private static final byte[] HELP = ResponseEncoder.utf8(
+            "Команды: /subscribe, /unsubscribe, /getwindow, /rename <name>, /resize <w> <h>, /stats, /exit");
+    private static final byte[] GOODBYE = ResponseEncoder.utf8("До свидания!");
+    private static final byte[] BAD_COMMAND = ResponseEncoder.utf8("Неверная команда. Введите /help");
+    private static final byte[] SUBSCRIBED = ResponseEncoder.utf8("Подписка на resize оформлена");
+    private static final byte[] SUBSCRIBE_FAILED = ResponseEncoder.utf8("Ошибка подписки: ");
+    private static final byte[] UNSUBSCRIBED = ResponseEncoder.utf8("Подписка отменена");
+    private static final byte[] WINDOW_SIZE = ResponseEncoder.utf8("Размер окна: ");
+    private static final byte[] TIMES = ResponseEncoder.utf8("×");
+    private static final byte[] EMPTY_NAME = ResponseEncoder.utf8("Ошибка: имя не может быть пустым");
+    private static final byte[] RENAMED = ResponseEncoder.utf8("Успех: заголовок изменён на '");
+    private static final byte[] RESIZE_USAGE = ResponseEncoder.utf8("Ошибка: используйте /resize <ширина> <высота>");
+    private static final byte[] RESIZED = ResponseEncoder.utf8("Успех: размер окна ");
+    private static final byte[] UNKNOWN = ResponseEncoder.utf8("Неизвестная команда: ");
+
+    /** Сессия клиента со стороны транспорта. Методы вызываются потоком команд этой сессии. */
+    interface Session {
+        /** Буфер ответов; транспорт отправляет его после пачки команд. */
+        ResponseEncoder encoder();
+
+        /**
+         * Подписывает на рассылку resize.
+         * @param binary кадрами {@link BinaryProtocol#RESIZE_EVENT}, иначе строками
+         */
+        void subscribe(boolean binary) throws IOException;
+
+        void unsubscribe(boolean binary);
+
+        /** Переводит сессию на кадры {@link BinaryProtocol} начиная со следующего запроса. */
+        void switchToBinary();
+    }
+
+    private final WindowModel model;
+
+    /** Команды протокола; разбор идёт по байтам строки без split и toLowerCase. */
+    private final CommandRegistry<Session> commands;
+    /** Команды двоичного режима ({@link BinaryProtocol}). */
+    private final FrameRegistry<Session> frames;
+
+    /** @param metrics куда учитываются команды; его же выводит /stats */
+    WindowCommands(WindowModel model, ServerMetrics metrics) {
+        this.model = model;
+        this.commands = new CommandRegistry<Session>()
+                .register("/subscribe", WindowCommands::subscribe)
+                .register("/unsubscribe", WindowCommands::unsubscribe)
+                .register("/getwindow", this::getWindow)
+                .register("/rename", this::rename)
+                .register("/resize", this::resize)
+                .register("/help", (session, args) -> {
+                    session.encoder().line(HELP);
+                    return true;
+                })
+                .register("/stats", (session, args) -> {
+                    metrics.appendTo(session.encoder().timestamp());
+                    return true;
+                })
+                .register("/exit", WindowCommands::exit)
+                .register(BinaryProtocol.SWITCH_COMMAND, WindowCommands::switchToBinary)
+                .unknown(WindowCommands::unknown)
+                .metrics(metrics);
+        this.frames = new FrameRegistry<Session>()
+                .register(BinaryProtocol.GET_WINDOW, "bin:/getwindow", this::getWindowFrame)
+                .register(BinaryProtocol.RESIZE, "bin:/resize", this::resizeFrame)
+                .register(BinaryProtocol.SUBSCRIBE, "bin:/subscribe", WindowCommands::subscribeFrame)
+                .register(BinaryProtocol.UNSUBSCRIBE, "bin:/unsubscribe", (session, args) -> {
+                    session.unsubscribe(true);
+                    BinaryProtocol.status(session.encoder(), BinaryProtocol.UNSUBSCRIBE, BinaryProtocol.OK);
+                    return true;
+                })
+                .register(BinaryProtocol.EXIT, "bin:/exit", WindowCommands::exit)
+                .unknown((session, frame) -> {
+                    BinaryProtocol.status(session.encoder(), frame.isEmpty() ? 0 : frame.byteAt(0), BinaryProtocol.UNKNOWN);
+                    return true;
+                })
+                .metrics(metrics);
+    }
+
+    /**
+     * Выполняет одну команду, дописывая ответ в буфер сессии.
+     * @param args переиспользуемый срез аргументов сессии
+     * @return false, если клиент запросил отключение
+     */
+    boolean handleLine(Session session, byte[] buf, int off, int len, ByteSlice args) {
+        return commands.dispatch(session, buf, off, len, args);
+    }
+
+    /** То же, что {@link #handleLine}, для кадра двоичного режима без поля длины. */
+    boolean handleFrame(Session session, byte[] buf, int off, int len, ByteSlice args) {
+        return frames.dispatch(session, buf, off, len, args);
+    }
+
+    /** Строка рассылки resize; кодируется один раз и разделяется всеми подписчиками. */
+    static byte[] resizeLine(WindowModel.State s) {
+        return new ResponseEncoder(CachedClock.SYSTEM, 64).timestamp()
+                .append(WINDOW_SIZE).append(s.width()).append(TIMES).append(s.height()).endLine()
+                .toByteArray();
+    }
+
+    /** Кадр {@link BinaryProtocol#RESIZE_EVENT} для подписчиков в двоичном режиме. */
+    static byte[] resizeFrame(WindowModel.State s) {
+        return new ResponseEncoder(CachedClock.SYSTEM, 64)
+                .beginFrame(BinaryProtocol.RESIZE_EVENT, BinaryProtocol.OK)
+                .putLong(s.width()).putLong(s.height()).endFrame()
+                .toByteArray();
+    }
+
+    private static boolean subscribe(Session session, ByteSlice args) {
+        ResponseEncoder enc = session.encoder();
+        try {
+            session.subscribe(false);
+            enc.line(SUBSCRIBED);
+        } catch (IOException e) {
+            enc.timestamp().append(SUBSCRIBE_FAILED).append(String.valueOf(e.getMessage())).endLine();
+        }
+        return true;
+    }
+
+    private static boolean unsubscribe(Session session, ByteSlice args) {
+        session.unsubscribe(false);
+        session.encoder().line(UNSUBSCRIBED);
+        return true;
+    }
+
+    private boolean getWindow(Session session, ByteSlice args) {
+        WindowModel.State s = model.state();
+        session.encoder().timestamp().append(WINDOW_SIZE).append(s.width()).append(TIMES).append(s.height()).endLine();
+        return true;
+    }
+
+    private boolean rename(Session session, ByteSlice args) {
+        ResponseEncoder enc = session.encoder();
+        if (args.isEmpty()) {
+            enc.line(EMPTY_NAME);
+        } else {
+            model.rename(args.toString());
+            enc.timestamp().append(RENAMED).append(args).append('\'').endLine();
+        }
+        return true;
+    }
+
+    private boolean resize(Session session, ByteSlice args) {
+        ResponseEncoder enc = session.encoder();
+        int w, h;
+        try {
+            w = args.nextInt();
+            h = args.nextInt();
+            if (args.hasNext() || w <= 0 || h <= 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            enc.line(RESIZE_USAGE);
+            return true;
+        }
+        model.resize(w, h);
+        enc.timestamp().append(RESIZED).append(w).append(TIMES).append(h).endLine();
+        return true;
+    }
+
+    private static boolean exit(Session session, ByteSlice args) {
+        session.encoder().line(GOODBYE);
+        return false;
+    }
+
+    private static boolean switchToBinary(Session session, ByteSlice args) {
+        // текстовые кадры рассылки в двоичном режиме клиент не разберёт
+        session.unsubscribe(false);
+        BinaryProtocol.hello(session.encoder());
+        session.switchToBinary();
+        return true;
+    }
+
+    private boolean getWindowFrame(Session session, ByteSlice args) {
+        WindowModel.State s = model.state();
+        session.encoder().beginFrame(BinaryProtocol.GET_WINDOW, BinaryProtocol.OK)
+                .putLong(s.width()).putLong(s.height()).endFrame();
+        return true;
+    }
+
+    private boolean resizeFrame(Session session, ByteSlice args) {
+        ResponseEncoder enc = session.encoder();
+        long w, h;
+        try {
+            w = args.readLong();
+            h = args.readLong();
+            if (w <= 0 || h <= 0 || w > Integer.MAX_VALUE || h > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException e) {
+            BinaryProtocol.status(enc, BinaryProtocol.RESIZE, BinaryProtocol.BAD_ARGS);
+            return true;
+        }
+        model.resize((int) w, (int) h);
+        enc.beginFrame(BinaryProtocol.RESIZE, BinaryProtocol.OK).putLong(w).putLong(h).endFrame();
+        return true;
+    }
+
+    private static boolean subscribeFrame(Session session, ByteSlice args) {
+        try {
+            session.subscribe(true);
+            BinaryProtocol.status(session.encoder(), BinaryProtocol.SUBSCRIBE, BinaryProtocol.OK);
+        } catch (IOException e) {
+            BinaryProtocol.status(session.encoder(), BinaryProtocol.SUBSCRIBE, BinaryProtocol.UNAVAILABLE);
+        }
+        return true;
+    }
+
+    private static boolean unknown(Session session, ByteSlice name) {
+        ResponseEncoder enc = session.encoder();
+        if (name.isEmpty() || name.byteAt(0) != '/') {
+            enc.line(BAD_COMMAND);
+        } else {
+            enc.timestamp().append(UNKNOWN).append(name.toString().toLowerCase()).endLine();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package com.memory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Потокобезопасное состояние окна Server1, не зависящее от JavaFX.
+ * Текущее состояние — неизменяемый снимок с номером версии, который
+ * читается без блокировок; изменения публикуются через CAS и передаются
+ * слушателям в потоке, который их выполнил.
+ */
+final class WindowModel {
+
+    /** Снимок состояния окна. */
+    record State(int width, int height, String title, long version) { }
+
+    private final AtomicReference<State> state;
+    private final List<Consumer<State>> resizeListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<State>> renameListeners = new CopyOnWriteArrayList<>();
+
+    WindowModel(int width, int height, String title) {
+        this.state = new AtomicReference<>(new State(width, height, title, 0));
+    }
+
+    State state() {
+        return state.get();
+    }
+
+    /** @return false, если размер не изменился */
+    boolean resize(int width, int height) {
+        State cur, next;
+        do {
+            cur = state.get();
+            if (cur.width() == width && cur.height() == height) return false;
+            next = new State(width, height, cur.title(), cur.version() + 1);
+        } while (!state.compareAndSet(cur, next));
+        for (Consumer<State> l : resizeListeners) l.accept(next);
+        return true;
+    }
+
+    void rename(String title) {
+        State cur, next;
+        do {
+            cur = state.get();
+            next = new State(cur.width(), cur.height(), title, cur.version() + 1);
+        } while (!state.compareAndSet(cur, next));
+        for (Consumer<State> l : renameListeners) l.accept(next);
+    }
+
+    void onResize(Consumer<State> listener) {
+        resizeListeners.add(listener);
+    }
+
+    void onRename(Consumer<State> listener) {
+        renameListeners.add(listener);
+    }
+}
@@ -0,0 +1,327 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сетевая часть Server1: приём клиентов, команды и рассылка resize.
+ * Работает только с {@link WindowModel} и не зависит от JavaFX, поэтому
+ * используется как из оконного {@link Server1}, так и из {@link HeadlessServer1}.
+ * <p>
+ * Порт, лимит клиентов и режим исполнения обработчиков задаются системными
+ * свойствами server1.port, server1.maxClients и server1.executor (cached —
+ * пул платформенных потоков, virtual — виртуальный поток на клиента, требует Java 21).
+ * Когда мест нет, клиент ждёт в очереди ({@link AdmissionQueue}, server1.admissionQueue
+ * мест на server1.admissionWaitMs), отказ содержит подсказку server1.retryAfterSec.
+ * Молчащие сессии закрываются через server1.idleTimeoutMs (кроме подписчиков),
+ * недочитанная команда — через server1.readTimeoutMs; 0 выключает тайм-аут.
+ * Команды можно слать пачкой; после /binary соединение переходит на кадры
+ * {@link BinaryProtocol}.
+ */
+final class WindowServer {
+    public static final int PORT = Integer.getInteger("server1.port", 5555);
+    public static final int MAX_CLIENTS = Integer.getInteger("server1.maxClients", 5);
+    private static final String EXECUTOR = System.getProperty("server1.executor", "cached");
+    private static final int ADMISSION_QUEUE = Integer.getInteger("server1.admissionQueue", 16);
+    private static final long ADMISSION_WAIT_MS = Long.getLong("server1.admissionWaitMs", 5000);
+    private static final int RETRY_AFTER_SEC = Integer.getInteger("server1.retryAfterSec", 5);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("server1.idleTimeoutMs", 300_000);
+    private static final long READ_TIMEOUT_MS = Long.getLong("server1.readTimeoutMs", 10_000);
+
+    private static final byte[] OVERLOADED = ResponseEncoder.utf8(
+            "Сервер переполнен. Попробуйте через " + RETRY_AFTER_SEC + " с.\n");
+    private static final byte[] IDLE_CLOSED = ResponseEncoder.utf8(
+            "Соединение закрыто: нет команд дольше " + IDLE_TIMEOUT_MS / 1000 + " с");
+    private static final byte[] READ_TIMED_OUT = ResponseEncoder.utf8(
+            "Соединение закрыто: команда не дочитана за " + READ_TIMEOUT_MS + " мс");
+
+    private static final int MAX_LINE = 8192;
+
+    /** Счётчики для /stats и JMX. */
+    private final ServerMetrics metrics = new ServerMetrics("Server1");
+    /** Журнал команд; server1.logRate — строк в секунду, 0 выключает. */
+    private final AsyncLog log = new AsyncLog("Server1-Log",
+            Integer.getInteger("server1.logRate", 100), 4096);
+
+    /** Команды протокола и двоичного режима; учитываются в {@link #metrics}. */
+    private final WindowCommands commands;
+    private ServerSocket serverSocket;
+    private ExecutorService clientPool;
+    private final Semaphore clientSemaphore = new Semaphore(MAX_CLIENTS);
+    private final AdmissionQueue<Socket> admission = new AdmissionQueue<>("Server1", clientSemaphore,
+            ADMISSION_QUEUE, ADMISSION_WAIT_MS, new AdmissionQueue.Gate<>() {
+                @Override
+                public void admit(Socket client) {
+                    startHandler(client);
+                }
+
+                @Override
+                public void reject(Socket client) {
+                    rejectClient(client);
+                }
+            });
+    private final LongAdder reaped = new LongAdder();
+
+    private final AtomicInteger activeClients = new AtomicInteger(0);
+    private final List<ClientHandler> handlers = new CopyOnWriteArrayList<>();
+    private final ExecutorService broadcastWriters = Executors.newFixedThreadPool(
+            Integer.getInteger("server1.writerThreads", 2), r -> {
+                Thread t = new Thread(r, "Server1-Broadcast");
+                t.setDaemon(true);
+                return t;
+            });
+    private final ResizeBroadcaster broadcaster = newBroadcaster();
+    /** Подписчики в двоичном режиме получают кадры {@link BinaryProtocol#RESIZE_EVENT}. */
+    private final ResizeBroadcaster binaryBroadcaster = newBroadcaster();
+
+    private ResizeBroadcaster newBroadcaster() {
+        return new ResizeBroadcaster(broadcastWriters,
+                Integer.getInteger("server1.maxLag", 64),
+                Long.getLong("server1.writeTimeoutMs", 5000));
+    }
+
+    WindowServer(WindowModel model) {
+        this.commands = new WindowCommands(model, metrics);
+        model.onResize(this::broadcastResize);
+        metrics.gauge("clients.active", activeClients::get);
+        metrics.gauge("broadcast.subscribers", () -> broadcaster.size() + binaryBroadcaster.size());
+        metrics.gauge("broadcast.queued", () -> broadcaster.queued() + binaryBroadcaster.queued());
+        metrics.gauge("broadcast.bytes", () -> broadcaster.bytesSent() + binaryBroadcaster.bytesSent());
+        metrics.gauge("broadcast.dropped", () -> broadcaster.dropped() + binaryBroadcaster.dropped());
+        metrics.gauge("log.suppressed", log::suppressed);
+        metrics.gauge("admission.waiting", admission::waiting);
+        metrics.gauge("sessions.reaped", reaped::sum);
+    }
+
+    /**
+     * Открывает порт и запускает поток приёма клиентов.
+     * @return false, если порт открыть не удалось (причина уже выведена)
+     */
+    boolean start() {
+        try {
+            serverSocket = new ServerSocket(PORT);
+            System.out.println("Server1 listening on port " + PORT + " (executor: " + EXECUTOR
+                    + ", max clients: " + MAX_CLIENTS + ")");
+        } catch (BindException be) {
+            System.err.println("Не удалось запустить сервер: порт " + PORT + " уже занят. Возможно, сервер уже запущен.");
+            return false;
+        } catch (IOException ioe) {
+            System.err.println("Ошибка при создании ServerSocket: " + ioe.getMessage());
+            return false;
+        }
+        clientPool = newClientExecutor(EXECUTOR);
+        metrics.registerMBean();
+        new Thread(this::acceptLoop, "Server-Acceptor").start();
+        return true;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                admission.offer(serverSocket.accept());
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** Место уже получено: сразу при приёме или при освобождении, из очереди ожидания. */
+    private void startHandler(Socket client) {
+        metrics.accepted();
+        activeClients.incrementAndGet();
+        ClientHandler h = new ClientHandler(client);
+        handlers.add(h);
+        try {
+            clientPool.execute(h);
+        } catch (RejectedExecutionException e) {
+            // сервер останавливается
+            h.disconnect();
+        }
+    }
+
+    private void rejectClient(Socket client) {
+        metrics.rejected();
+        try (client; OutputStream w = client.getOutputStream()) {
+            // без метки времени, как у Server2: клиенты ищут подсказку в строке отказа
+            w.write(OVERLOADED);
+        } catch (IOException ignored) {
+            // клиент мог уйти, не дождавшись
+        }
+    }
+
+    void stop() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {}
+        admission.shutdown();
+        if (clientPool != null) clientPool.shutdownNow();
+        broadcaster.shutdown();
+        binaryBroadcaster.shutdown();
+        broadcastWriters.shutdownNow();
+    }
+
+    private class ClientHandler implements Runnable, WindowCommands.Session {
+        private final Socket socket;
+        private OutputStream out;
+        private final ResponseEncoder enc = new ResponseEncoder();
+        private final Lock writeLock = new ReentrantLock();
+        private final ByteSlice args = new ByteSlice();
+        private boolean binary;
+
+        ClientHandler(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream is = socket.getInputStream()) {
+                LineReader in = new LineReader(is, MAX_LINE, metrics);
+                out = socket.getOutputStream();
+                enc.line(WindowCommands.CONNECTED);
+                flush();
+                String id = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+                socket.setSoTimeout(soTimeoutMillis());
+                long lastCommand = System.nanoTime();
+                while (true) {
+                    try {
+                        if (!(binary ? in.nextFrame() : in.next())) break;
+                    } catch (SocketTimeoutException e) {
+                        // чтение просыпается по меньшему из тайм-аутов, поэтому каждый срок проверяется сам
+                        long now = System.nanoTime();
+                        if (in.hasPartial() && READ_TIMEOUT_MS > 0) {
+                            if (now - in.lastReadNanos() < TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS)) continue;
+                            reap(id, READ_TIMED_OUT);
+                            break;
+                        }
+                        if (IDLE_TIMEOUT_MS > 0 && !isSubscribed()
+                                && now - lastCommand >= TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS)) {
+                            reap(id, IDLE_CLOSED);
+                            break;
+                        }
+                        continue;
+                    }
+                    lastCommand = System.nanoTime();
+                    boolean keep;
+                    if (binary) {
+                        keep = commands.handleFrame(this, in.array(), in.offset(), in.length(), args);
+                    } else {
+                        if (log.enabled()) {
+                            log.log("[" + id + "] -> "
+                                    + new String(in.array(), in.offset(), in.length(), StandardCharsets.UTF_8).trim());
+                        }
+                        keep = commands.handleLine(this, in.array(), in.offset(), in.length(), args);
+                    }
+                    if (!keep) break;
+                    // пока во входном буфере есть команды, копим ответы и отправляем их одной пачкой
+                    if (!in.ready()) flush();
+                }
+                flush();
+            } catch (IOException e) {
+                System.err.println("Client error: " + e.getMessage());
+            } finally {
+                disconnect();
+            }
+        }
+
+        /** Подписчики только слушают рассылку, их молчание — не простой. */
+        private boolean isSubscribed() {
+            return broadcaster.isSubscribed(this) || binaryBroadcaster.isSubscribed(this);
+        }
+
+        /** Закрывает сессию по тайм-ауту; в двоичном режиме без текстового пояснения. */
+        private void reap(String id, byte[] reason) {
+            reaped.increment();
+            if (!binary) enc.line(reason);
+            log.info("[" + id + "] " + new String(reason, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public ResponseEncoder encoder() {
+            return enc;
+        }
+
+        @Override
+        public void subscribe(boolean binaryFrames) throws IOException {
+            (binaryFrames ? binaryBroadcaster : broadcaster).subscribe(this, socket, writeLock);
+        }
+
+        @Override
+        public void unsubscribe(boolean binaryFrames) {
+            (binaryFrames ? binaryBroadcaster : broadcaster).unsubscribe(this);
+        }
+
+        @Override
+        public void switchToBinary() {
+            binary = true;
+        }
+
+        /** Отправляет накопленные ответы одним write. */
+        private void flush() throws IOException {
+            // под этой же блокировкой идёт и рассылка resize в этот сокет
+            writeLock.lock();
+            try {
+                metrics.bytesOut(enc.writeTo(out));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void disconnect() {
+            broadcaster.unsubscribe(this);
+            binaryBroadcaster.unsubscribe(this);
+            handlers.remove(this);
+            admission.release();
+            activeClients.decrementAndGet();
+            try { socket.close(); } catch (IOException ignored) {}
+            log.info("Client disconnected. Active: " + activeClients.get());
+        }
+    }
+
+    /** Период пробуждения блокирующего чтения для проверки тайм-аутов; 0 — без тайм-аутов. */
+    private static int soTimeoutMillis() {
+        long t = READ_TIMEOUT_MS > 0 ? READ_TIMEOUT_MS : IDLE_TIMEOUT_MS;
+        if (IDLE_TIMEOUT_MS > 0) t = Math.min(t, IDLE_TIMEOUT_MS);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, t));
+    }
+
+    private void broadcastResize(WindowModel.State s) {
+        // кадр кодируется один раз и разделяется всеми подписчиками
+        if (broadcaster.size() > 0) broadcaster.publish(WindowCommands.resizeLine(s));
+        if (binaryBroadcaster.size() > 0) binaryBroadcaster.publish(WindowCommands.resizeFrame(s));
+    }
+
+    /**
+     * Виртуальные потоки создаются через рефлексию: модуль собирается и под
+     * Java 17, а режим virtual доступен при запуске на Java 21+.
+     */
+    private static ExecutorService newClientExecutor(String mode) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Виртуальные потоки недоступны в Java "
+                        + Runtime.version().feature() + ", используется пул потоков");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
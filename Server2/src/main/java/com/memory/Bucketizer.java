@@ -0,0 +1,69 @@
+package com.memory;
+
+/**
+ * Сворачивает упорядоченные по времени замеры swap в корзины
+ * фиксированного шага (min/max/avg свободного swap). Пустые корзины пропускаются.
+ */
+final class Bucketizer {
+    /** Верхняя граница числа корзин в ответе на один запрос. */
+    static final int MAX_BUCKETS = 1000;
+
+    /** Приёмник агрегированной корзины. */
+    interface Sink {
+        void bucket(long start, int count, long minFree, long maxFree, long avgFree, long total);
+    }
+
+    private final long from;
+    private final long step;
+    private final Sink sink;
+    private long bucketStart = Long.MIN_VALUE;
+    private int count;
+    private long min, max, sum, total;
+
+    Bucketizer(long from, long step, Sink sink) {
+        this.from = from;
+        this.step = step;
+        this.sink = sink;
+    }
+
+    /**
+     * Шаг, увеличенный так, чтобы диапазон дал не больше {@link #MAX_BUCKETS} корзин.
+     * Разность to - from считается без знака, поэтому любой диапазон вплоть до
+     * Long.MIN_VALUE..Long.MAX_VALUE не переполняется.
+     */
+    static long effectiveStep(long from, long to, long stepMs) {
+        long step = Math.max(1, stepMs);
+        if (to < from) return step;
+        long last = to - from;
+        if (Long.compareUnsigned(Long.divideUnsigned(last, step), MAX_BUCKETS) >= 0) {
+            step = Long.divideUnsigned(last, MAX_BUCKETS) + 1;
+        }
+        return step;
+    }
+
+    void add(long t, long totalBytes, long free) {
+        long start = from + Long.divideUnsigned(t - from, step) * step;
+        if (start != bucketStart) {
+            emit();
+            bucketStart = start;
+            count = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+        }
+        count++;
+        sum += free;
+        if (free < min) min = free;
+        if (free > max) max = free;
+        total = totalBytes;
+    }
+
+    void finish() {
+        emit();
+        count = 0;
+    }
+
+    private void emit() {
+        if (count > 0) sink.bucket(bucketStart, count, min, max, sum / count, total);
+    }
+}
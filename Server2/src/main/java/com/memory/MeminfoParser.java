@@ -0,0 +1,137 @@
+package com.memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Разбор /proc/meminfo без выделения памяти в установившемся режиме.
+ * Файл держится открытым, каждое чтение идёт с позиции 0 в один и тот же
+ * ByteBuffer, ключи сравниваются прямо по байтам. Значения в байтах
+ * (поля в kB умножаются на 1024) доступны как long[] по индексам полей.
+ * Экземпляр не потокобезопасен.
+ */
+final class MeminfoParser implements Closeable {
+    static final int MEM_TOTAL = 0;
+    static final int MEM_FREE = 1;
+    static final int MEM_AVAILABLE = 2;
+    static final int BUFFERS = 3;
+    static final int CACHED = 4;
+    static final int SWAP_CACHED = 5;
+    static final int ACTIVE = 6;
+    static final int INACTIVE = 7;
+    static final int SWAP_TOTAL = 8;
+    static final int SWAP_FREE = 9;
+    static final int DIRTY = 10;
+    static final int WRITEBACK = 11;
+    static final int ANON_PAGES = 12;
+    static final int MAPPED = 13;
+    static final int SHMEM = 14;
+    static final int SLAB = 15;
+    static final int COMMIT_LIMIT = 16;
+    static final int COMMITTED_AS = 17;
+
+    static final String[] FIELD_NAMES = {
+            "MemTotal", "MemFree", "MemAvailable", "Buffers", "Cached", "SwapCached",
+            "Active", "Inactive", "SwapTotal", "SwapFree", "Dirty", "Writeback",
+            "AnonPages", "Mapped", "Shmem", "Slab", "CommitLimit", "Committed_AS"
+    };
+    static final int FIELD_COUNT = FIELD_NAMES.length;
+
+    private static final byte[][] KEYS = new byte[FIELD_COUNT][];
+    static {
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            KEYS[i] = FIELD_NAMES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final FileChannel channel;
+    private ByteBuffer buf = ByteBuffer.allocate(4096);
+    private final long[] values = new long[FIELD_COUNT];
+
+    MeminfoParser(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Перечитывает файл и обновляет значения.
+     * @return массив значений по индексам полей; -1 для отсутствующих.
+     *         Массив принадлежит парсеру и перезаписывается следующим чтением.
+     */
+    long[] read() throws IOException {
+        int len = fill();
+        Arrays.fill(values, -1L);
+        parse(buf.array(), len);
+        return values;
+    }
+
+    long get(int field) {
+        return values[field];
+    }
+
+    private int fill() throws IOException {
+        while (true) {
+            buf.clear();
+            long pos = 0;
+            int n;
+            while (buf.hasRemaining() && (n = channel.read(buf, pos)) > 0) {
+                pos += n;
+            }
+            if (buf.hasRemaining()) return buf.position();
+            // файл не поместился — растим буфер один раз и перечитываем
+            buf = ByteBuffer.allocate(buf.capacity() * 2);
+        }
+    }
+
+    private void parse(byte[] b, int len) {
+        int i = 0;
+        while (i < len) {
+            int lineStart = i;
+            int colon = -1;
+            while (i < len && b[i] != '\n') {
+                if (colon < 0 && b[i] == ':') colon = i;
+                i++;
+            }
+            int lineEnd = i++;
+            if (colon < 0) continue;
+            int field = match(b, lineStart, colon - lineStart);
+            if (field < 0) continue;
+
+            int p = colon + 1;
+            while (p < lineEnd && b[p] == ' ') p++;
+            long v = 0;
+            boolean digits = false;
+            while (p < lineEnd && b[p] >= '0' && b[p] <= '9') {
+                v = v * 10 + (b[p++] - '0');
+                digits = true;
+            }
+            if (!digits) continue;
+            while (p < lineEnd && b[p] == ' ') p++;
+            if (p + 1 < lineEnd && b[p] == 'k' && b[p + 1] == 'B') v *= 1024L;
+            values[field] = v;
+        }
+    }
+
+    private static int match(byte[] b, int off, int len) {
+        outer:
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            byte[] key = KEYS[f];
+            if (key.length != len) continue;
+            for (int k = 0; k < len; k++) {
+                if (b[off + k] != key[k]) continue outer;
+            }
+            return f;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,610 @@
+package com.memory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Неблокирующий движок строкового протокола на java.nio.
+ * Один поток принимает соединения на одном или нескольких портах,
+ * фиксированный набор потоков event loop обслуживает все сессии через
+ * собственные Selector'ы. Соединение может
+ * перейти на кадры {@link BinaryProtocol}. Сверх лимита соединения ждут
+ * места в {@link AdmissionQueue}; молчащие и зависшие на полукоманде сессии
+ * закрываются по тайм-аутам ({@link #timeouts(long, long)}), а не читающие
+ * рассылку — по длине очереди записи ({@link #maxQueued(int)}).
+ */
+final class NioServer {
+    private static final int MAX_LINE = 8192;
+    private static final byte[] LINE_TOO_LONG = ResponseEncoder.utf8("Слишком длинная строка\n");
+    private static final byte[] IDLE_CLOSED = ResponseEncoder.utf8("Соединение закрыто: нет команд\n");
+    private static final byte[] READ_TIMED_OUT = ResponseEncoder.utf8("Соединение закрыто: команда не дочитана\n");
+
+    /** Обработчик событий сессии. Все методы вызываются из потока event loop. */
+    interface Handler {
+        void onConnect(Connection c);
+
+        /**
+         * Строка без перевода строки как участок входного буфера соединения;
+         * действительна только на время вызова.
+         * @return false, если после отправки ответов соединение нужно закрыть
+         */
+        boolean onLine(Connection c, byte[] buf, int off, int len);
+
+        /**
+         * Кадр {@link BinaryProtocol} без поля длины; вызывается после
+         * {@link Connection#switchToBinary()}.
+         * @return false, если после отправки ответов соединение нужно закрыть
+         */
+        boolean onFrame(Connection c, byte[] buf, int off, int len);
+
+        void onDisconnect(Connection c);
+
+        /** Не закрывать по простою, например пока сессия подписана на рассылку. */
+        boolean keepIdle(Connection c);
+    }
+
+    private final String name;
+    private final Handler handler;
+    private final Semaphore permits;
+    private AdmissionQueue<SocketChannel> admission;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private long idleTimeoutNanos;
+    private long readTimeoutNanos;
+    private final LongAdder reaped = new LongAdder();
+    private final EventLoop[] loops;
+    private final byte[] rejectFrame;
+    private final ServerMetrics metrics;
+    /** Буферы, ждущие записи во всех соединениях: растёт, когда клиенты не успевают читать. */
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    private int maxQueued = 256;
+    /** Журнал отключений; null — не писать. */
+    private AsyncLog log;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+    private volatile Selector acceptor;
+
+    /**
+     * @param name        префикс имён потоков
+     * @param rejectFrame готовая строка отказа (с переводом строки) при исчерпании лимита
+     */
+    NioServer(String name, Handler handler, Semaphore permits, int ioThreads, byte[] rejectFrame, ServerMetrics metrics) {
+        this.name = name;
+        this.handler = handler;
+        this.permits = permits;
+        this.rejectFrame = rejectFrame;
+        this.metrics = metrics;
+        this.loops = new EventLoop[Math.max(1, ioThreads)];
+        admission(0, 0);
+        // admission() может заменить очередь, поэтому показатель читает поле
+        metrics.gauge("admission.waiting", () -> admission.waiting());
+        metrics.gauge("nio.queuedWrites", queuedWrites::get);
+        metrics.gauge("nio.dropped", dropped::sum);
+        metrics.gauge("sessions.reaped", reaped::sum);
+    }
+
+    /**
+     * Очередь ожидания места; вызывается до {@link #serve}.
+     * @param maxWaiting 0 — отказ сразу
+     */
+    NioServer admission(int maxWaiting, long maxWaitMs) {
+        admission = new AdmissionQueue<>(name, permits, maxWaiting, maxWaitMs,
+                new AdmissionQueue.Gate<>() {
+                    @Override
+                    public void admit(SocketChannel ch) {
+                        register(ch);
+                    }
+
+                    @Override
+                    public void reject(SocketChannel ch) {
+                        metrics.rejected();
+                        NioServer.this.reject(ch);
+                    }
+                });
+        return this;
+    }
+
+    /** Журнал с ограничением частоты для отключений; вызывается до {@link #serve}. */
+    NioServer log(AsyncLog log) {
+        this.log = log;
+        return this;
+    }
+
+    /**
+     * Сколько буферов может ждать записи в одном соединении; клиент, который
+     * не успевает читать рассылку, отключается, а не копит кадры в куче.
+     * Вызывается до {@link #serve}.
+     */
+    NioServer maxQueued(int frames) {
+        this.maxQueued = Math.max(1, frames);
+        return this;
+    }
+
+    /**
+     * Тайм-ауты сессий; вызывается до {@link #serve}, 0 выключает.
+     * @param idleMs без единой команды (кроме сессий с {@link Handler#keepIdle})
+     * @param readMs без новых байт, пока команда пришла не целиком
+     */
+    NioServer timeouts(long idleMs, long readMs) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleMs));
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, readMs));
+        return this;
+    }
+
+    /**
+     * Запускает потоки event loop и принимает соединения со всех каналов
+     * в текущем потоке, пока они открыты.
+     */
+    void serve(ServerSocketChannel... servers) throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(name + "-IO-" + i);
+            loops[i].thread.start();
+        }
+        try (Selector selector = Selector.open()) {
+            for (ServerSocketChannel server : servers) {
+                server.configureBlocking(false);
+                server.register(selector, SelectionKey.OP_ACCEPT);
+            }
+            acceptor = selector;
+            // ключ закрытого канала снимается при следующем select
+            while (running && !selector.keys().isEmpty()) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    ServerSocketChannel server = (ServerSocketChannel) k.channel();
+                    SocketChannel ch;
+                    try {
+                        while ((ch = server.accept()) != null) admission.offer(ch);
+                    } catch (ClosedChannelException e) {
+                        k.cancel();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Место уже получено; вызывается из потока приёма или из потока, освободившего место. */
+    private void register(SocketChannel ch) {
+        try {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+            try { ch.close(); } catch (IOException ignored) {}
+            admission.release();
+            return;
+        }
+        metrics.accepted();
+        loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].register(ch);
+    }
+
+    void shutdown() {
+        running = false;
+        Selector a = acceptor;
+        if (a != null) a.wakeup();
+        admission.shutdown();
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+    }
+
+    private void reject(SocketChannel ch) {
+        try (ch) {
+            ByteBuffer b = ByteBuffer.wrap(rejectFrame);
+            while (b.hasRemaining() && ch.write(b) > 0) { }
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Одно клиентское соединение. Ответы на команды пишутся в {@link #encoder()}
+     * из потока event loop и уходят одной пачкой после обработки всех
+     * прочитанных строк; {@link #send(byte[])} можно вызывать из любого потока.
+     */
+    final class Connection {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final ResponseEncoder encoder = new ResponseEncoder(CachedClock.SYSTEM, 512);
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        /** Длина {@link #out}; ConcurrentLinkedQueue.size() линеен. */
+        private final AtomicInteger queued = new AtomicInteger();
+        private volatile boolean overflowed;
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final SocketAddress remote;
+        private SelectionKey key;
+        private Object attachment;
+        private long lastReadAt;
+        private long lastCommandAt;
+        private volatile boolean closeAfterFlush;
+        private boolean closed;
+        private boolean binary;
+        /** Ждёт отложенного ответа: следующие команды не разбираются и не читаются. */
+        private boolean suspended;
+        /** Готовый отложенный ответ; забирает event loop. */
+        private volatile byte[] deferred;
+
+        private Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.lastReadAt = this.lastCommandAt = System.nanoTime();
+            SocketAddress addr = null;
+            try { addr = channel.getRemoteAddress(); } catch (IOException ignored) {}
+            this.remote = addr;
+        }
+
+        SocketAddress remoteAddress() {
+            return remote;
+        }
+
+        /** Порт, на который пришло соединение, если сервер слушает несколько. */
+        int localPort() {
+            return channel.socket().getLocalPort();
+        }
+
+        /** Состояние сессии, принадлежащее обработчику. */
+        void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        Object attachment() {
+            return attachment;
+        }
+
+        /** Буфер ответов; только для потока event loop этого соединения. */
+        ResponseEncoder encoder() {
+            return encoder;
+        }
+
+        /**
+         * Ставит готовый кадр в очередь на отправку и планирует запись в event loop.
+         * Массив может разделяться несколькими соединениями и не должен меняться.
+         * Если очередь длиннее {@link #maxQueued(int)}, соединение закрывается.
+         */
+        void send(byte[] frame) {
+            if (overflowed) return;
+            if (queued.incrementAndGet() > maxQueued) {
+                // кадр не ставится: соединение закроется в своём event loop
+                queued.decrementAndGet();
+                overflowed = true;
+            } else {
+                queuedWrites.incrementAndGet();
+                out.add(ByteBuffer.wrap(frame));
+            }
+            // планируется и из своего потока: рассылку может вызвать команда
+            // другого соединения того же event loop
+            loop.scheduleFlush(this);
+        }
+
+        /**
+         * Отвечает на текущую команду, когда work завершится; reply дописывает
+         * ответ в переданный буфер. Готовый результат пишется в {@link #encoder()}
+         * сразу. Иначе разбор следующих команд соединения откладывается до ответа,
+         * так что ответы идут в порядке команд, а event loop не ждёт.
+         * Только для потока event loop.
+         */
+        void replyWhenDone(CompletableFuture<?> work, Consumer<ResponseEncoder> reply) {
+            if (work.isDone()) {
+                reply.accept(encoder);
+                return;
+            }
+            suspended = true;
+            work.whenComplete((r, e) -> {
+                ResponseEncoder enc = new ResponseEncoder(CachedClock.SYSTEM, 256);
+                try {
+                    reply.accept(enc);
+                } finally {
+                    deferred = enc.toByteArray();
+                    loop.scheduleFlush(this);
+                }
+            });
+        }
+
+        /**
+         * Переводит соединение на кадры {@link BinaryProtocol}: данные после
+         * текущей строки разбираются уже как кадры. Только для потока event loop.
+         */
+        void switchToBinary() {
+            binary = true;
+        }
+
+        boolean isBinary() {
+            return binary;
+        }
+
+        /** Закрывает соединение после отправки уже поставленных в очередь ответов. */
+        void close() {
+            closeAfterFlush = true;
+            if (Thread.currentThread() != loop.thread) {
+                loop.scheduleFlush(this);
+            }
+        }
+    }
+
+    /** Как часто проверять тайм-ауты: четверть меньшего из них, но не реже раза в секунду. */
+    private long sweepPeriodNanos() {
+        long t = Long.MAX_VALUE;
+        if (idleTimeoutNanos > 0) t = idleTimeoutNanos;
+        if (readTimeoutNanos > 0) t = Math.min(t, readTimeoutNanos);
+        if (t == Long.MAX_VALUE) return 0;
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(10), Math.min(TimeUnit.SECONDS.toNanos(1), t / 4));
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Thread thread;
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+
+        EventLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void register(SocketChannel ch) {
+            pending.add(ch);
+            selector.wakeup();
+        }
+
+        void scheduleFlush(Connection c) {
+            if (c.flushScheduled.compareAndSet(false, true)) {
+                flushQueue.add(c);
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            long sweepNanos = sweepPeriodNanos();
+            long nextSweep = System.nanoTime() + sweepNanos;
+            while (running) {
+                try {
+                    if (sweepNanos == 0) {
+                        selector.select();
+                    } else {
+                        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextSweep - System.nanoTime())));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Ошибка Selector в " + thread.getName() + ": " + e.getMessage());
+                    break;
+                }
+                registerPending();
+                flushScheduled();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    Connection c = (Connection) k.attachment();
+                    if (!k.isValid()) {
+                        closeNow(c);
+                        continue;
+                    }
+                    if (k.isReadable()) read(c);
+                    if (k.isValid() && k.isWritable()) flush(c);
+                }
+                if (sweepNanos > 0 && System.nanoTime() - nextSweep >= 0) {
+                    sweep(System.nanoTime());
+                    nextSweep = System.nanoTime() + sweepNanos;
+                }
+            }
+            for (SelectionKey k : selector.keys()) {
+                closeNow((Connection) k.attachment());
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+
+        private void registerPending() {
+            SocketChannel ch;
+            while ((ch = pending.poll()) != null) {
+                Connection c = new Connection(ch, this);
+                try {
+                    c.key = ch.register(selector, SelectionKey.OP_READ, c);
+                } catch (IOException e) {
+                    try { ch.close(); } catch (IOException ignored) {}
+                    admission.release();
+                    continue;
+                }
+                handler.onConnect(c);
+                flush(c);
+            }
+        }
+
+        private void flushScheduled() {
+            Connection c;
+            while ((c = flushQueue.poll()) != null) {
+                c.flushScheduled.set(false);
+                if (c.suspended && c.deferred != null) {
+                    resume(c);
+                } else {
+                    flush(c);
+                }
+            }
+        }
+
+        /** Отложенный ответ готов: он уходит первым, затем разбираются ждавшие команды. */
+        private void resume(Connection c) {
+            if (c.closed) return;
+            c.encoder.append(c.deferred);
+            c.deferred = null;
+            c.suspended = false;
+            long now = System.nanoTime();
+            c.lastReadAt = c.lastCommandAt = now;
+            process(c, now);
+        }
+
+        private void read(Connection c) {
+            int n;
+            try {
+                n = c.channel.read(c.in);
+            } catch (IOException e) {
+                closeNow(c);
+                return;
+            }
+            if (n < 0) {
+                closeNow(c);
+                return;
+            }
+            metrics.bytesIn(n);
+            long now = System.nanoTime();
+            c.lastReadAt = now;
+            process(c, now);
+        }
+
+        /** Разбирает прочитанные строки или кадры, пока соединение не ждёт отложенного ответа. */
+        private void process(Connection c, long now) {
+            ByteBuffer in = c.in;
+            in.flip();
+            byte[] arr = in.array();
+            int start = in.position();
+            int limit = in.limit();
+            // строки и кадры разбираются прямо во входном буфере; режим может
+            // смениться посреди пачки, поэтому проверяется на каждом шаге
+            while (start < limit && !c.closeAfterFlush && !c.suspended) {
+                if (c.binary) {
+                    if (limit - start < BinaryProtocol.LENGTH_BYTES) break;
+                    int len = (arr[start] & 0xFF) << 24 | (arr[start + 1] & 0xFF) << 16
+                            | (arr[start + 2] & 0xFF) << 8 | (arr[start + 3] & 0xFF);
+                    if (len < 1 || len > MAX_LINE - BinaryProtocol.LENGTH_BYTES) {
+                        c.closeAfterFlush = true;
+                        break;
+                    }
+                    if (limit - start - BinaryProtocol.LENGTH_BYTES < len) break;
+                    int frameStart = start + BinaryProtocol.LENGTH_BYTES;
+                    start = frameStart + len;
+                    c.lastCommandAt = now;
+                    if (!handler.onFrame(c, arr, frameStart, len)) {
+                        c.closeAfterFlush = true;
+                    }
+                } else {
+                    int i = start;
+                    while (i < limit && arr[i] != '\n') i++;
+                    if (i == limit) break;
+                    int end = i;
+                    if (end > start && arr[end - 1] == '\r') end--;
+                    int lineStart = start;
+                    start = i + 1;
+                    c.lastCommandAt = now;
+                    if (!handler.onLine(c, arr, lineStart, end - lineStart)) {
+                        c.closeAfterFlush = true;
+                    }
+                }
+            }
+            in.position(start);
+            in.compact();
+            if (!in.hasRemaining() && !c.binary && !c.suspended) {
+                c.encoder.append(LINE_TOO_LONG);
+                c.closeAfterFlush = true;
+            }
+            flush(c);
+        }
+
+        private void flush(Connection c) {
+            if (c.closed) return;
+            if (c.overflowed) {
+                dropped.increment();
+                if (log != null && log.enabled()) {
+                    log.log("Клиент " + c.remote + " отключён: очередь записи больше " + maxQueued);
+                }
+                closeNow(c);
+                return;
+            }
+            try {
+                drainEncoder(c);
+                ByteBuffer b;
+                while ((b = c.out.peek()) != null) {
+                    metrics.bytesOut(c.channel.write(b));
+                    if (b.hasRemaining()) {
+                        c.key.interestOps(readOps(c) | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    c.out.poll();
+                    c.queued.decrementAndGet();
+                    queuedWrites.decrementAndGet();
+                }
+                if (c.closeAfterFlush) {
+                    closeNow(c);
+                } else {
+                    c.key.interestOps(readOps(c));
+                }
+            } catch (IOException e) {
+                closeNow(c);
+            }
+        }
+
+        /** Пока соединение ждёт отложенного ответа, новые байты остаются в сокете. */
+        private int readOps(Connection c) {
+            return c.suspended ? 0 : SelectionKey.OP_READ;
+        }
+
+        /**
+         * Переносит накопленные ответы в сокет. Если очередь пуста, пишем прямо
+         * из буфера кодировщика; копируется только то, что не влезло в сокет.
+         */
+        private void drainEncoder(Connection c) throws IOException {
+            ResponseEncoder enc = c.encoder;
+            if (enc.isEmpty()) return;
+            ByteBuffer b = enc.buffer();
+            if (c.out.isEmpty()) metrics.bytesOut(c.channel.write(b));
+            if (b.hasRemaining()) {
+                ByteBuffer copy = ByteBuffer.allocate(b.remaining());
+                copy.put(b).flip();
+                queuedWrites.incrementAndGet();
+                c.queued.incrementAndGet();
+                c.out.add(copy);
+            }
+            enc.reset();
+        }
+
+        /**
+         * Закрывает сессии, у которых истёк тайм-аут. Команда, пришедшая не
+         * целиком, лежит в начале входного буфера, поэтому position() > 0.
+         */
+        private void sweep(long now) {
+            for (SelectionKey k : selector.keys()) {
+                Connection c = (Connection) k.attachment();
+                // ожидание отложенного ответа — задержка сервера, а не клиента
+                if (c.closed || c.closeAfterFlush || c.suspended) continue;
+                byte[] reason;
+                if (readTimeoutNanos > 0 && c.in.position() > 0 && now - c.lastReadAt > readTimeoutNanos) {
+                    reason = READ_TIMED_OUT;
+                } else if (idleTimeoutNanos > 0 && now - c.lastCommandAt > idleTimeoutNanos && !handler.keepIdle(c)) {
+                    reason = IDLE_CLOSED;
+                } else {
+                    continue;
+                }
+                reaped.increment();
+                if (!c.binary) c.encoder.append(reason);
+                c.closeAfterFlush = true;
+                flush(c);
+            }
+        }
+
+        private void closeNow(Connection c) {
+            if (c.closed) return;
+            c.closed = true;
+            c.key.cancel();
+            try { c.channel.close(); } catch (IOException ignored) {}
+            while (c.out.poll() != null) queuedWrites.decrementAndGet();
+            c.queued.set(0);
+            admission.release();
+            handler.onDisconnect(c);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Поиск процессов, занимающих больше всего swap (поле VmSwap в /proc/[pid]/status).
+ * PID'ы сканируются параллельно в ForkJoinPool, каждая подзадача держит
+ * ограниченную кучу top-N, кучи затем сливаются. Результат кэшируется на
+ * короткое время, одновременные запросы разделяют одно сканирование.
+ */
+final class ProcessSwapScanner {
+    /** Сколько процессов хранится в кэше; /topswap N больше этого обрезается. */
+    static final int MAX_TOP = 100;
+    private static final int LEAF_SIZE = 128;
+    private static final Comparator<ProcSwap> BY_SWAP = Comparator.comparingLong(ProcSwap::swapBytes);
+
+    /** Процесс и занятый им swap в байтах. */
+    record ProcSwap(int pid, String name, long swapBytes) { }
+
+    /** Результат одного сканирования; top отсортирован по убыванию swap. */
+    record Result(List<ProcSwap> top, int scanned, long tookMillis, long finishedAt) { }
+
+    private final Path proc;
+    private final long cacheMillis;
+    private final ForkJoinPool pool;
+    private final AtomicReference<CompletableFuture<Result>> last = new AtomicReference<>();
+
+    ProcessSwapScanner(Path proc, long cacheMillis, int parallelism) {
+        this.proc = proc;
+        this.cacheMillis = cacheMillis;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("Server2-Scan-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    boolean available() {
+        return Files.isDirectory(proc.resolve("self"));
+    }
+
+    /**
+     * Свежий (не старше cacheMillis) результат. Сканирование идёт в пуле,
+     * вызывающий поток не ждёт; одновременные вызовы получают одно и то же
+     * сканирование. Неудачное сканирование не кэшируется: следующий вызов
+     * начнёт новое.
+     */
+    CompletableFuture<Result> top() {
+        while (true) {
+            CompletableFuture<Result> cur = last.get();
+            if (cur != null) {
+                if (!cur.isDone()) return cur;
+                Result r = cur.isCompletedExceptionally() ? null : cur.getNow(null);
+                if (r != null && System.currentTimeMillis() - r.finishedAt() <= cacheMillis) return cur;
+            }
+            CompletableFuture<Result> next = new CompletableFuture<>();
+            if (!last.compareAndSet(cur, next)) continue;
+            pool.execute(() -> {
+                try {
+                    next.complete(scan());
+                } catch (Throwable e) {
+                    last.compareAndSet(next, null);
+                    next.completeExceptionally(e);
+                }
+            });
+            return next;
+        }
+    }
+
+    private Result scan() {
+        long start = System.nanoTime();
+        String[] names = proc.toFile().list();
+        int[] pids = new int[names == null ? 0 : names.length];
+        int n = 0;
+        if (names != null) {
+            for (String s : names) {
+                int pid = parsePid(s);
+                if (pid > 0) pids[n++] = pid;
+            }
+        }
+        PriorityQueue<ProcSwap> heap = pool.invoke(new ScanTask(pids, 0, n));
+        List<ProcSwap> top = new ArrayList<>(heap);
+        top.sort(BY_SWAP.reversed());
+        long took = (System.nanoTime() - start) / 1_000_000;
+        return new Result(top, n, took, System.currentTimeMillis());
+    }
+
+    private static int parsePid(String s) {
+        int v = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return s.isEmpty() ? -1 : v;
+    }
+
+    private final class ScanTask extends RecursiveTask<PriorityQueue<ProcSwap>> {
+        private final int[] pids;
+        private final int from;
+        private final int to;
+
+        ScanTask(int[] pids, int from, int to) {
+            this.pids = pids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PriorityQueue<ProcSwap> compute() {
+            if (to - from <= LEAF_SIZE) {
+                PriorityQueue<ProcSwap> heap = new PriorityQueue<>(MAX_TOP + 1, BY_SWAP);
+                byte[] buf = new byte[4096];
+                for (int i = from; i < to; i++) {
+                    scanPid(pids[i], buf, heap);
+                }
+                return heap;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(pids, from, mid);
+            left.fork();
+            PriorityQueue<ProcSwap> right = new ScanTask(pids, mid, to).compute();
+            PriorityQueue<ProcSwap> merged = left.join();
+            for (ProcSwap p : right) offer(merged, p);
+            return merged;
+        }
+
+        private void scanPid(int pid, byte[] buf, PriorityQueue<ProcSwap> heap) {
+            int len;
+            try (InputStream in = Files.newInputStream(proc.resolve(Integer.toString(pid)).resolve("status"))) {
+                len = in.readNBytes(buf, 0, buf.length);
+            } catch (IOException e) {
+                return; // процесс завершился или нет доступа
+            }
+            long swap = findKb(buf, len, VM_SWAP) * 1024L;
+            if (swap <= 0) return;
+            if (heap.size() >= MAX_TOP && heap.peek().swapBytes() >= swap) return;
+            offer(heap, new ProcSwap(pid, findName(buf, len), swap));
+        }
+    }
+
+    private static void offer(PriorityQueue<ProcSwap> heap, ProcSwap p) {
+        if (heap.size() < MAX_TOP) {
+            heap.add(p);
+        } else if (heap.peek().swapBytes() < p.swapBytes()) {
+            heap.poll();
+            heap.add(p);
+        }
+    }
+
+    private static final byte[] VM_SWAP = "\nVmSwap:".getBytes(StandardCharsets.US_ASCII);
+
+    /** Значение поля в kB или -1, если поле не найдено. */
+    private static long findKb(byte[] b, int len, byte[] key) {
+        outer:
+        for (int i = 0; i + key.length <= len; i++) {
+            for (int k = 0; k < key.length; k++) {
+                if (b[i + k] != key[k]) continue outer;
+            }
+            int p = i + key.length;
+            while (p < len && (b[p] == ' ' || b[p] == '\t')) p++;
+            long v = 0;
+            while (p < len && b[p] >= '0' && b[p] <= '9') v = v * 10 + (b[p++] - '0');
+            return v;
+        }
+        return -1;
+    }
+
+    /** Имя из первой строки "Name:\t..." файла status. */
+    private static String findName(byte[] b, int len) {
+        int p = 5; // "Name:"
+        while (p < len && (b[p] == ' ' || b[p] == '\t')) p++;
+        int end = p;
+        while (end < len && b[end] != '\n') end++;
+        return new String(b, p, end - p, StandardCharsets.UTF_8);
+    }
+}
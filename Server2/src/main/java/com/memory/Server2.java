@@ -1,21 +1,266 @@
 package com.memory;
 
-import com.sun.management.OperatingSystemMXBean;
-
 import java.io.*;
-import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * Сервер сведений о swap.
+ * Режим и лимиты задаются системными свойствами:
+ * server2.port, server2.mode (thread | nio), server2.maxClients, server2.ioThreads,
+ * server2.sampleIntervalMs, server2.watchTickMs, server2.historySize.
+ * Хранение замеров на диске включается свойством server2.storeDir
+ * (server2.storeSegmentBytes, server2.storeSegmentMs, server2.storeRetentionMs);
+ * запросы /history к диску выполняют server2.storeReaders потоков.
+ * Сканирование процессов для /topswap: server2.scanThreads, server2.topswapCacheMs.
+ * Сверх лимита клиенты ждут в очереди (server2.admissionQueue мест на
+ * server2.admissionWaitMs), отказ содержит подсказку server2.retryAfterSec.
+ * Сессии без команд закрываются через server2.idleTimeoutMs (кроме подписанных
+ * на /watchswap), недочитанная команда — через server2.readTimeoutMs; 0 выключает.
+ * Клиент, у которого в очереди рассылки больше server2.maxQueued кадров,
+ * отключается.
+ * Команды можно слать пачкой; после /binary соединение переходит на кадры
+ * {@link BinaryProtocol}.
+ */
 public class Server2 {
-    public static final int PORT = 6666;
-    private static final int MAX_CLIENTS = 2;
+    public static final int PORT = Integer.getInteger("server2.port", 6666);
+    private static final int MAX_CLIENTS = Integer.getInteger("server2.maxClients", 2);
+    private static final String MODE = System.getProperty("server2.mode", "thread");
+    private static final int IO_THREADS = Integer.getInteger("server2.ioThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long SAMPLE_INTERVAL_MS = Long.getLong("server2.sampleIntervalMs", 1000);
+    private static final long WATCH_TICK_MS = Long.getLong("server2.watchTickMs", 100);
+    private static final int HISTORY_SIZE = Integer.getInteger("server2.historySize", 86_400);
+    private static final int SCAN_THREADS = Integer.getInteger("server2.scanThreads",
+            Runtime.getRuntime().availableProcessors());
+    private static final long TOPSWAP_CACHE_MS = Long.getLong("server2.topswapCacheMs", 1000);
+    private static final int MAX_LINE = 8192;
+    private static final int ADMISSION_QUEUE = Integer.getInteger("server2.admissionQueue", 16);
+    private static final long ADMISSION_WAIT_MS = Long.getLong("server2.admissionWaitMs", 5000);
+    private static final int RETRY_AFTER_SEC = Integer.getInteger("server2.retryAfterSec", 5);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("server2.idleTimeoutMs", 300_000);
+    private static final long READ_TIMEOUT_MS = Long.getLong("server2.readTimeoutMs", 10_000);
+    private static final int MAX_QUEUED = Integer.getInteger("server2.maxQueued", 64);
+    private static final String STORE_DIR = System.getProperty("server2.storeDir");
+    private static final long STORE_SEGMENT_BYTES = Long.getLong("server2.storeSegmentBytes", 4L << 20);
+    private static final long STORE_SEGMENT_MS = Long.getLong("server2.storeSegmentMs", TimeUnit.DAYS.toMillis(1));
+    private static final long STORE_RETENTION_MS = Long.getLong("server2.storeRetentionMs", TimeUnit.DAYS.toMillis(30));
+
+    static final byte[] GREETING = ResponseEncoder.utf8("Добро пожаловать в Server2! Введите /getswap");
+    private static final byte[] OVERLOADED = ResponseEncoder.utf8(
+            "Сервер переполнен. Попробуйте через " + RETRY_AFTER_SEC + " с.\n");
+    private static final byte[] IDLE_CLOSED = ResponseEncoder.utf8("Соединение закрыто: нет команд\n");
+    private static final byte[] READ_TIMED_OUT = ResponseEncoder.utf8("Соединение закрыто: команда не дочитана\n");
+    private static final byte[] SWAP_TOTAL = ResponseEncoder.utf8("SwapTotal: ");
+    private static final byte[] SWAP_FREE = ResponseEncoder.utf8("SwapFree : ");
+    private static final byte[] SAMPLED_AT = ResponseEncoder.utf8("Замер    : ");
+    private static final byte[] BAD_MAX_AGE = ResponseEncoder.utf8("Ошибка: допустимая давность должна быть числом миллисекунд");
+    private static final byte[] WATCH_USAGE = ResponseEncoder.utf8("Ошибка: используйте /watchswap <интервал, мс> [порог, байт]");
+    private static final byte[] WATCH_OK = ResponseEncoder.utf8("Подписка на swap: каждые ");
+    private static final byte[] WATCH_THRESHOLD = ResponseEncoder.utf8(" мс, порог ");
+    private static final byte[] WATCH_BYTES = ResponseEncoder.utf8(" Б");
+    private static final byte[] UNWATCHED = ResponseEncoder.utf8("Подписка на swap отменена");
+    private static final byte[] NOT_WATCHING = ResponseEncoder.utf8("Подписки на swap нет");
+    private static final byte[] HISTORY_USAGE = ResponseEncoder.utf8("Ошибка: используйте /history <от, мс эпохи> <до, мс эпохи> [шаг, мс]");
+    private static final byte[] HISTORY_END = ResponseEncoder.utf8("Конец истории, шаг ");
+    private static final byte[] MS = ResponseEncoder.utf8(" мс");
+    private static final byte[] HISTORY_FAILED = ResponseEncoder.utf8("Ошибка чтения истории с диска: ");
+    private static final byte[] TOPSWAP_USAGE = ResponseEncoder.utf8("Ошибка: используйте /topswap <N>, N > 0");
+    private static final byte[] NO_PROC = ResponseEncoder.utf8("Ошибка: /proc недоступен на этой системе");
+    private static final byte[] TOPSWAP_FAILED = ResponseEncoder.utf8("Ошибка сканирования процессов: ");
+    private static final byte[] TOPSWAP_CAPPED = ResponseEncoder.utf8("Показано не больше процессов, чем хранит сервер: ");
+    private static final byte[] UNKNOWN = ResponseEncoder.utf8("Неизвестная команда, введите /getswap [макс. давность, мс], "
+            + "/watchswap <мс> [порог], /unwatch, /history <от> <до> [шаг], /topswap <N>, /stats или /exit");
+    private static final byte[] WATCH_FREE = ResponseEncoder.utf8("Swap: свободно ");
+    private static final byte[] WATCH_OF = ResponseEncoder.utf8(" из ");
 
     private static final Semaphore clientSemaphore = new Semaphore(MAX_CLIENTS);
+    /**
+     * Счётчики для /stats и JMX; объявлены до реестров команд, которые их используют.
+     * Заменяются только в {@link #startEmbedded} до приёма клиентов.
+     */
+    private static ServerMetrics metrics = new ServerMetrics("Server2");
+    /** Журнал подключений и отключений; server2.logRate — строк в секунду, 0 выключает. */
+    static final AsyncLog log = new AsyncLog("Server2-Log",
+            Integer.getInteger("server2.logRate", 100), 4096);
+    private static final LongAdder reaped = new LongAdder();
+    private static final LongAdder pushDropped = new LongAdder();
+    /** Потоки записи рассылок режима thread; заняты, только пока клиент не успевает читать. */
+    private static final ExecutorService pushers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Server2-Push");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Очередь допуска режима thread; в режиме nio её роль выполняет {@link NioServer}. */
+    private static AdmissionQueue<Socket> admission;
+    private static final SwapSampler sampler = new SwapSampler(SAMPLE_INTERVAL_MS);
+    private static final SwapHistory history = new SwapHistory(HISTORY_SIZE);
+    private static SwapStore store;
+    /** Потоки запросов /history к диску (server2.storeReaders). */
+    private static final ExecutorService storeReaders = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger("server2.storeReaders", 2)), r -> {
+                Thread t = new Thread(r, "Server2-StoreQuery");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final ProcessSwapScanner scanner =
+            new ProcessSwapScanner(Path.of("/proc"), TOPSWAP_CACHE_MS, SCAN_THREADS);
+    private static final SwapWatchers watchers =
+            new SwapWatchers(sampler, WATCH_TICK_MS, Server2::formatWatch, Server2::formatWatchFrame);
+    /** Кодировщик кадров /watchswap; используется только потоком тика подписок. */
+    private static final ResponseEncoder watchEncoder = new ResponseEncoder();
+
+    /** Сессия клиента: блокирующий сокет или NIO-соединение. */
+    interface Session {
+        /** Буфер ответов; пишется только потоком, обрабатывающим команды этой сессии. */
+        ResponseEncoder encoder();
+
+        /** Отправляет готовый кадр из любого потока; массив не должен меняться. */
+        void push(byte[] frame);
+
+        /** Переиспользуемый срез аргументов команды; только для потока команд сессии. */
+        ByteSlice args();
+
+        /** Переводит сессию на кадры {@link BinaryProtocol} начиная со следующего запроса. */
+        void switchToBinary();
+
+        /**
+         * Отвечает на текущую команду, когда work завершится. Ответы остаются в
+         * порядке команд: следующие команды сессии ждут этого ответа, но поток
+         * event loop при этом не блокируется.
+         */
+        <T> void replyWhenDone(CompletableFuture<T> work, Reply<T> reply);
+    }
+
+    /** Ответ по результату фоновой работы; error — её исключение без обёрток CompletionException. */
+    interface Reply<T> {
+        void write(ResponseEncoder out, T result, Throwable error);
+    }
+
+    /** Дописывает ответ по завершённой (или ждёт завершения) работе. */
+    static <T> void writeReply(ResponseEncoder out, CompletableFuture<T> work, Reply<T> reply) {
+        T result = null;
+        Throwable error = null;
+        try {
+            result = work.join();
+        } catch (CompletionException | CancellationException e) {
+            error = rootCause(e);
+        }
+        reply.write(out, result, error);
+    }
+
+    /**
+     * Сессия поверх блокирующего сокета; запись в поток сериализуется блокировкой.
+     * Рассылки ({@link #push}) копятся в очереди сессии и пишутся потоком из
+     * {@link #pushers}, чтобы медленный клиент не задерживал общий тик подписок.
+     */
+    private static final class SocketSession implements Session {
+        private final Socket socket;
+        private final OutputStream out;
+        private final ResponseEncoder encoder = new ResponseEncoder();
+        private final ByteSlice args = new ByteSlice();
+        private final Lock writeLock = new ReentrantLock();
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private boolean binary;
+
+        SocketSession(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public void switchToBinary() {
+            binary = true;
+        }
+
+        @Override
+        public ResponseEncoder encoder() {
+            return encoder;
+        }
+
+        @Override
+        public ByteSlice args() {
+            return args;
+        }
+
+        @Override
+        public void push(byte[] frame) {
+            if (overflowed) return;
+            if (queued.incrementAndGet() > MAX_QUEUED) {
+                overflowed = true;
+                pushDropped.increment();
+                if (log.enabled()) {
+                    log.log("Клиент " + socket.getRemoteSocketAddress() + " отключён: очередь записи больше " + MAX_QUEUED);
+                }
+                // поток чтения получит ошибку и снимет подписку
+                try { socket.close(); } catch (IOException ignored) {}
+                return;
+            }
+            pending.add(frame);
+            if (draining.compareAndSet(false, true)) pushers.execute(this::drain);
+        }
+
+        /** Пишет накопленные рассылки; в каждый момент работает не больше одного drain на сессию. */
+        private void drain() {
+            do {
+                writeLock.lock();
+                try {
+                    byte[] frame;
+                    while ((frame = pending.poll()) != null) {
+                        queued.decrementAndGet();
+                        out.write(frame);
+                        metrics.bytesOut(frame.length);
+                    }
+                    out.flush();
+                } catch (IOException ignored) {
+                    // разрыв заметит поток чтения
+                } finally {
+                    writeLock.unlock();
+                }
+                draining.set(false);
+            } while (!pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        /** Поток сессии сам обрабатывает её команды, поэтому просто ждёт результата. */
+        @Override
+        public <T> void replyWhenDone(CompletableFuture<T> work, Reply<T> reply) {
+            writeReply(encoder, work, reply);
+        }
+
+        void flush() throws IOException {
+            writeLock.lock();
+            try {
+                metrics.bytesOut(encoder.writeTo(out));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
 
     public static void main(String[] args) {
+        startServices();
+        metrics.registerMBean();
+        if ("nio".equalsIgnoreCase(MODE)) {
+            runNio();
+            return;
+        }
         ServerSocket server = null;
         try {
             server = new ServerSocket(PORT);
@@ -28,23 +273,37 @@ public class Server2 {
             System.exit(1);
         }
 
-        while (true) {
-            try {
-                Socket client = server.accept();
-                if (clientSemaphore.tryAcquire()) {
-                    new Thread(() -> {
-                        try {
-                            handleClient(client);
-                        } finally {
-                            clientSemaphore.release();
+        admission = new AdmissionQueue<>("Server2", clientSemaphore,
+                ADMISSION_QUEUE, ADMISSION_WAIT_MS, new AdmissionQueue.Gate<>() {
+                    @Override
+                    public void admit(Socket client) {
+                        metrics.accepted();
+                        new Thread(() -> {
+                            try {
+                                handleClient(client);
+                            } finally {
+                                admission.release();
+                            }
+                        }, "Server2-Worker").start();
+                    }
+
+                    @Override
+                    public void reject(Socket client) {
+                        metrics.rejected();
+                        try (client; OutputStream out = client.getOutputStream()) {
+                            out.write(OVERLOADED);
+                        } catch (IOException ignored) {
+                            // клиент мог уйти, не дождавшись
                         }
-                    }, "Server2-Worker").start();
-                } else {
-                    try (PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
-                        out.println("Сервер переполнен. Попробуйте позже.");
                     }
-                    client.close();
-                }
+                });
+        metrics.gauge("admission.waiting", admission::waiting);
+        metrics.gauge("sessions.reaped", reaped::sum);
+        metrics.gauge("push.dropped", pushDropped::sum);
+
+        while (true) {
+            try {
+                admission.offer(server.accept());
             } catch (IOException e) {
                 System.err.println("Ошибка в основном цикле Server2: " + e.getMessage());
                 if (server.isClosed()) break;
@@ -57,75 +316,505 @@ public class Server2 {
     }
 
 
-    private static void handleClient(Socket client) {
-        System.out.println("Клиент подключился: " + client.getRemoteSocketAddress());
-        try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-                PrintWriter out = new PrintWriter(client.getOutputStream(), true)
-        ) {
-            out.println("Добро пожаловать в Server2! Введите /getswap");
-            String line;
-            while ((line = in.readLine()) != null) {
-                if ("/getswap".equalsIgnoreCase(line.trim())) {
-                    long[] swap = readSwapInfo();
-                    out.println("SwapTotal: " + formatBytes(swap[0]));
-                    out.println("SwapFree : " + formatBytes(swap[1]));
-                } else if ("/exit".equalsIgnoreCase(line.trim())) {
-                    break;
-                } else {
-                    out.println("Неизвестная команда, введите /getswap или /exit");
-                }
+    /**
+     * Запускает замеры и подписки без сетевой части: команды Server2 обслуживает
+     * чужой транспорт через {@link #handleLine} и {@link #handleFrame}, например
+     * общий сервер модуля combined. Вызывается один раз вместо {@link #main}.
+     * @param shared метрики процесса; в них учитываются команды и их выводит /stats
+     */
+    static void startEmbedded(ServerMetrics shared) {
+        metrics = shared;
+        COMMANDS.metrics(shared);
+        FRAMES.metrics(shared);
+        startServices();
+    }
+
+    /** Замеры, история, хранилище и тик подписок; общая часть всех режимов. */
+    private static void startServices() {
+        sampler.addListener(history::add);
+        if (STORE_DIR != null) {
+            try {
+                store = new SwapStore(Path.of(STORE_DIR), STORE_SEGMENT_BYTES, STORE_SEGMENT_MS, STORE_RETENTION_MS);
+                sampler.addListener(store::append);
+                Runtime.getRuntime().addShutdownHook(new Thread(store::close, "Server2-StoreFlush"));
+                System.out.println("Замеры swap сохраняются в " + STORE_DIR);
+            } catch (IOException e) {
+                System.err.println("Не удалось открыть хранилище " + STORE_DIR + ": " + e.getMessage());
+            }
+        }
+        sampler.start();
+        watchers.start();
+        metrics.gauge("watchers", watchers::size);
+        metrics.gauge("history.points", history::size);
+        metrics.gauge("log.suppressed", log::suppressed);
+    }
+
+    /** Снимает подписку /watchswap сессии, например при её закрытии. */
+    static void stopWatching(Session session) {
+        watchers.unwatch(session);
+    }
+
+    /** Подписанные на /watchswap только слушают, их молчание — не простой. */
+    static boolean isWatching(Session session) {
+        return watchers.isWatching(session);
+    }
+
+    private static void runNio() {
+        ServerSocketChannel server = null;
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(PORT));
+            System.out.println("Server2 (nio, " + IO_THREADS + " IO-потоков, до " + MAX_CLIENTS
+                    + " клиентов) запущен на порту " + PORT);
+        } catch (BindException be) {
+            System.err.println("Не удалось запустить Server2: порт " + PORT + " уже занят. Возможно, сервер уже запущен.");
+            System.exit(1);
+        } catch (IOException ioe) {
+            System.err.println("Ошибка при создании ServerSocketChannel: " + ioe.getMessage());
+            System.exit(1);
+        }
+
+        NioServer nio = new NioServer("Server2", new NioServer.Handler() {
+            @Override
+            public void onConnect(NioServer.Connection c) {
+                Session s = new Session() {
+                    private final ByteSlice args = new ByteSlice();
+
+                    @Override
+                    public ByteSlice args() {
+                        return args;
+                    }
+
+                    @Override
+                    public void switchToBinary() {
+                        c.switchToBinary();
+                    }
+
+                    @Override
+                    public ResponseEncoder encoder() {
+                        return c.encoder();
+                    }
+
+                    @Override
+                    public void push(byte[] frame) {
+                        c.send(frame);
+                    }
+
+                    @Override
+                    public <T> void replyWhenDone(CompletableFuture<T> work, Reply<T> reply) {
+                        c.replyWhenDone(work, out -> writeReply(out, work, reply));
+                    }
+                };
+                c.attach(s);
+                c.encoder().append(GREETING).endLine();
+            }
+
+            @Override
+            public boolean onLine(NioServer.Connection c, byte[] buf, int off, int len) {
+                return handleLine(buf, off, len, (Session) c.attachment());
+            }
+
+            @Override
+            public boolean onFrame(NioServer.Connection c, byte[] buf, int off, int len) {
+                return handleFrame(buf, off, len, (Session) c.attachment());
             }
+
+            @Override
+            public void onDisconnect(NioServer.Connection c) {
+                watchers.unwatch((Session) c.attachment());
+            }
+
+            @Override
+            public boolean keepIdle(NioServer.Connection c) {
+                return watchers.isWatching((Session) c.attachment());
+            }
+        }, clientSemaphore, IO_THREADS, OVERLOADED, metrics)
+                .admission(ADMISSION_QUEUE, ADMISSION_WAIT_MS)
+                .timeouts(IDLE_TIMEOUT_MS, READ_TIMEOUT_MS)
+                .maxQueued(MAX_QUEUED)
+                .log(log);
+        try {
+            nio.serve(server);
         } catch (IOException e) {
-            System.err.println("Ошибка общения с клиентом: " + e.getMessage());
+            System.err.println("Ошибка в основном цикле Server2: " + e.getMessage());
         } finally {
-            try { client.close(); } catch (IOException ignored) {}
-            System.out.println("Клиент отключился: " + client.getRemoteSocketAddress());
+            nio.shutdown();
+            try { server.close(); } catch (IOException ignored) {}
         }
     }
 
+    /** Команды протокола; разбор идёт по байтам строки без создания String. */
+    private static final CommandRegistry<Session> COMMANDS = new CommandRegistry<Session>()
+            .register("/getswap", Server2::getSwap)
+            .register("/watchswap", Server2::watchSwap)
+            .register("/unwatch", Server2::unwatch)
+            .register("/history", Server2::history)
+            .register("/topswap", Server2::topSwap)
+            .register("/stats", (session, args) -> {
+                metrics.appendTo(session.encoder().timestamp());
+                return true;
+            })
+            .register("/exit", (session, args) -> false)
+            .register(BinaryProtocol.SWITCH_COMMAND, (session, args) -> {
+                // текстовые кадры подписки в двоичном режиме клиент не разберёт
+                watchers.unwatch(session);
+                BinaryProtocol.hello(session.encoder());
+                session.switchToBinary();
+                return true;
+            })
+            .unknown((session, name) -> {
+                session.encoder().append(UNKNOWN).endLine();
+                return true;
+            })
+            .metrics(metrics);
 
-    private static long[] readSwapInfo() {
-        String os = System.getProperty("os.name").toLowerCase();
+    /** Команды двоичного режима: те же данные сырыми long без форматирования. */
+    private static final FrameRegistry<Session> FRAMES = new FrameRegistry<Session>()
+            .register(BinaryProtocol.GET_SWAP, "bin:/getswap", Server2::getSwapFrame)
+            .register(BinaryProtocol.WATCH_SWAP, "bin:/watchswap", Server2::watchSwapFrame)
+            .register(BinaryProtocol.UNWATCH, "bin:/unwatch", (session, args) -> {
+                session.encoder().beginFrame(BinaryProtocol.UNWATCH, BinaryProtocol.OK)
+                        .putLong(watchers.unwatch(session) ? 1 : 0).endFrame();
+                return true;
+            })
+            .register(BinaryProtocol.HISTORY, "bin:/history", Server2::historyFrame)
+            .register(BinaryProtocol.TOP_SWAP, "bin:/topswap", Server2::topSwapFrame)
+            .register(BinaryProtocol.EXIT, "bin:/exit", (session, args) -> false)
+            .unknown((session, frame) -> {
+                BinaryProtocol.status(session.encoder(), frame.isEmpty() ? 0 : frame.byteAt(0), BinaryProtocol.UNKNOWN);
+                return true;
+            })
+            .metrics(metrics);
 
-        if (os.contains("win")) {
-            OperatingSystemMXBean mx = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+    /**
+     * Выполняет одну команду протокола, дописывая ответ в буфер сессии.
+     * Отправку буфера выполняет транспорт после пачки команд.
+     * @param session сессия; один и тот же объект на всё время соединения
+     * @return false, если клиент запросил отключение
+     */
+    static boolean handleLine(byte[] buf, int off, int len, Session session) {
+        return COMMANDS.dispatch(session, buf, off, len, session.args());
+    }
 
-            long total = mx.getTotalSwapSpaceSize();
-            long free  = mx.getFreeSwapSpaceSize();
-            return new long[] { total, free };
+    /** То же, что {@link #handleLine}, для кадра двоичного режима без поля длины. */
+    static boolean handleFrame(byte[] buf, int off, int len, Session session) {
+        return FRAMES.dispatch(session, buf, off, len, session.args());
+    }
+
+    private static boolean getSwap(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        SwapSnapshot swap;
+        if (args.isEmpty()) {
+            swap = sampler.current();
+        } else {
+            long maxAge;
+            try {
+                maxAge = args.nextLong();
+                if (args.hasNext()) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                out.append(BAD_MAX_AGE).endLine();
+                return true;
+            }
+            swap = sampler.fresh(Math.max(0, maxAge));
+        }
+        out.append(SWAP_TOTAL).appendSize(swap.total()).endLine();
+        out.append(SWAP_FREE).appendSize(swap.free()).endLine();
+        out.append(SAMPLED_AT).time(swap.sampledAt()).endLine();
+        return true;
+    }
+
+    private static boolean watchSwap(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        long interval, minDelta = 0;
+        try {
+            interval = args.nextLong();
+            if (args.hasNext()) minDelta = args.nextLong();
+            if (args.hasNext()) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            out.append(WATCH_USAGE).endLine();
+            return true;
         }
+        long actual = watchers.watch(session, interval, minDelta, false);
+        out.append(WATCH_OK).append(actual).append(WATCH_THRESHOLD)
+                .append(Math.max(0, minDelta)).append(WATCH_BYTES).endLine();
+        return true;
+    }
+
+    private static boolean unwatch(Session session, ByteSlice args) {
+        session.encoder().append(watchers.unwatch(session) ? UNWATCHED : NOT_WATCHING).endLine();
+        return true;
+    }
+
+    private static boolean history(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        long from, to, step = 1;
+        try {
+            from = args.nextLong();
+            to = args.nextLong();
+            if (args.hasNext()) step = args.nextLong();
+            if (args.hasNext()) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            out.append(HISTORY_USAGE).endLine();
+            return true;
+        }
+        long f = from, t = to, st = step;
+        if (fromStore(from)) {
+            session.replyWhenDone(readStore(enc -> appendHistory(enc, store::query, f, t, st)),
+                    (enc, bytes, error) -> {
+                        if (error != null) {
+                            enc.append(HISTORY_FAILED).append(String.valueOf(error.getMessage())).endLine();
+                        } else {
+                            enc.append(bytes);
+                        }
+                    });
+        } else {
+            appendHistory(out, history::query, f, t, st);
+        }
+        return true;
+    }
+
+    /** Источник корзин /history: кольцевой буфер или диск. */
+    private interface HistorySource {
+        long query(long from, long to, long stepMs, Bucketizer.Sink sink);
+    }
+
+    /** Кольцевой буфер отвечает, если покрывает начало диапазона, иначе — диск. */
+    private static boolean fromStore(long from) {
+        return store != null && from < history.oldest();
+    }
+
+    /**
+     * Запрос к диску в потоке {@link #storeReaders}: длинный диапазон читает
+     * много записей и не должен держать поток команд или event loop.
+     */
+    private static CompletableFuture<byte[]> readStore(Consumer<ResponseEncoder> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            ResponseEncoder enc = new ResponseEncoder();
+            query.accept(enc);
+            return enc.toByteArray();
+        }, storeReaders);
+    }
+
+    private static void appendHistory(ResponseEncoder out, HistorySource source, long from, long to, long step) {
+        // корзины пишутся в буфер ответа, сеть под замком истории не трогаем
+        Bucketizer.Sink sink = (start, count, min, max, avg, total) ->
+                out.append(start).append(" n=").append(count)
+                        .append(" min=").append(min).append(" max=").append(max)
+                        .append(" avg=").append(avg).append(" total=").append(total).endLine();
+        long actual = source.query(from, to, step, sink);
+        out.append(HISTORY_END).append(actual).append(MS).endLine();
+    }
+
+    private static boolean topSwap(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        int n = 10;
+        try {
+            if (args.hasNext()) n = args.nextInt();
+            if (n <= 0 || args.hasNext()) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            out.append(TOPSWAP_USAGE).endLine();
+            return true;
+        }
+        if (!scanner.available()) {
+            out.append(NO_PROC).endLine();
+            return true;
+        }
+        int limit = n;
+        session.replyWhenDone(scanner.top(), (enc, r, error) -> appendTop(enc, r, error, limit));
+        return true;
+    }
 
-        long total = -1, free = -1;
-        try (BufferedReader r = new BufferedReader(new FileReader("/proc/meminfo"))) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                if (line.startsWith("SwapTotal:")) {
-                    total = parseKbLine(line) * 1024L;
-                } else if (line.startsWith("SwapFree:")) {
-                    free  = parseKbLine(line) * 1024L;
+    /** Строки ответа /topswap: процессы, предупреждение об обрезке до MAX_TOP и итог. */
+    private static void appendTop(ResponseEncoder out, ProcessSwapScanner.Result r, Throwable error, int n) {
+        if (error != null) {
+            out.append(TOPSWAP_FAILED).append(String.valueOf(error.getMessage())).endLine();
+            return;
+        }
+        List<ProcessSwapScanner.ProcSwap> top = r.top();
+        for (int i = 0; i < Math.min(n, top.size()); i++) {
+            ProcessSwapScanner.ProcSwap p = top.get(i);
+            out.append(i + 1).append(". PID ").append(p.pid()).append(' ').append(p.name())
+                    .append(": ").appendSize(p.swapBytes()).endLine();
+        }
+        if (n > ProcessSwapScanner.MAX_TOP) {
+            out.append(TOPSWAP_CAPPED).append(ProcessSwapScanner.MAX_TOP).endLine();
+        }
+        out.append("Просмотрено процессов: ").append(r.scanned())
+                .append(" за ").append(r.tookMillis()).append(MS).endLine();
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static boolean getSwapFrame(Session session, ByteSlice args) {
+        SwapSnapshot swap;
+        try {
+            swap = args.remaining() == 0 ? sampler.current() : sampler.fresh(Math.max(0, args.readLong()));
+        } catch (IllegalArgumentException e) {
+            BinaryProtocol.status(session.encoder(), BinaryProtocol.GET_SWAP, BinaryProtocol.BAD_ARGS);
+            return true;
+        }
+        session.encoder().beginFrame(BinaryProtocol.GET_SWAP, BinaryProtocol.OK)
+                .putLong(swap.total()).putLong(swap.free()).putLong(swap.sampledAt()).endFrame();
+        return true;
+    }
+
+    private static boolean watchSwapFrame(Session session, ByteSlice args) {
+        long interval, minDelta = 0;
+        try {
+            interval = args.readLong();
+            if (args.remaining() > 0) minDelta = args.readLong();
+        } catch (IllegalArgumentException e) {
+            BinaryProtocol.status(session.encoder(), BinaryProtocol.WATCH_SWAP, BinaryProtocol.BAD_ARGS);
+            return true;
+        }
+        long actual = watchers.watch(session, interval, minDelta, true);
+        session.encoder().beginFrame(BinaryProtocol.WATCH_SWAP, BinaryProtocol.OK).putLong(actual).endFrame();
+        return true;
+    }
+
+    private static boolean historyFrame(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        long from, to, step = 1;
+        try {
+            from = args.readLong();
+            to = args.readLong();
+            if (args.remaining() > 0) step = args.readLong();
+        } catch (IllegalArgumentException e) {
+            BinaryProtocol.status(out, BinaryProtocol.HISTORY, BinaryProtocol.BAD_ARGS);
+            return true;
+        }
+        long f = from, t = to, st = step;
+        if (fromStore(from)) {
+            session.replyWhenDone(readStore(enc -> appendHistoryFrame(enc, store::query, f, t, st)),
+                    (enc, bytes, error) -> {
+                        if (error != null) {
+                            BinaryProtocol.status(enc, BinaryProtocol.HISTORY, BinaryProtocol.UNAVAILABLE);
+                        } else {
+                            enc.append(bytes);
+                        }
+                    });
+        } else {
+            appendHistoryFrame(out, history::query, f, t, st);
+        }
+        return true;
+    }
+
+    private static void appendHistoryFrame(ResponseEncoder out, HistorySource source, long from, long to, long step) {
+        // шаг известен только после запроса, поэтому место под него резервируется заранее
+        out.beginFrame(BinaryProtocol.HISTORY, BinaryProtocol.OK);
+        int stepAt = out.size();
+        out.putLong(0);
+        Bucketizer.Sink sink = (start, count, min, max, avg, total) ->
+                out.putLong(start).putLong(count).putLong(min).putLong(max).putLong(avg).putLong(total);
+        long actual = source.query(from, to, step, sink);
+        out.putLong(stepAt, actual).endFrame();
+    }
+
+    private static boolean topSwapFrame(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder();
+        long n = 10;
+        try {
+            if (args.remaining() > 0) n = args.readLong();
+            if (n <= 0) throw new IllegalArgumentException();
+        } catch (IllegalArgumentException e) {
+            BinaryProtocol.status(out, BinaryProtocol.TOP_SWAP, BinaryProtocol.BAD_ARGS);
+            return true;
+        }
+        if (!scanner.available()) {
+            BinaryProtocol.status(out, BinaryProtocol.TOP_SWAP, BinaryProtocol.UNAVAILABLE);
+            return true;
+        }
+        long limit = n;
+        session.replyWhenDone(scanner.top(), (enc, r, error) -> {
+            if (error != null) {
+                BinaryProtocol.status(enc, BinaryProtocol.TOP_SWAP, BinaryProtocol.UNAVAILABLE);
+                return;
+            }
+            List<ProcessSwapScanner.ProcSwap> top = r.top();
+            enc.beginFrame(BinaryProtocol.TOP_SWAP, BinaryProtocol.OK).putLong(r.scanned()).putLong(r.tookMillis());
+            for (int i = 0; i < Math.min(limit, top.size()); i++) {
+                ProcessSwapScanner.ProcSwap p = top.get(i);
+                enc.putLong(p.pid()).putLong(p.swapBytes());
+            }
+            enc.endFrame();
+        });
+        return true;
+    }
+
+    private static void handleClient(Socket client) {
+        if (log.enabled()) log.log("Клиент подключился: " + client.getRemoteSocketAddress());
+        SocketSession session = null;
+        try (InputStream is = client.getInputStream()) {
+            LineReader in = new LineReader(is, MAX_LINE, metrics);
+            session = new SocketSession(client);
+            session.encoder().append(GREETING).endLine();
+            session.flush();
+            client.setSoTimeout(soTimeoutMillis());
+            long lastCommand = System.nanoTime();
+            while (true) {
+                try {
+                    if (!(session.binary ? in.nextFrame() : in.next())) break;
+                } catch (SocketTimeoutException e) {
+                    // чтение просыпается по меньшему из тайм-аутов, поэтому каждый срок проверяется сам
+                    byte[] reason = null;
+                    long now = System.nanoTime();
+                    if (in.hasPartial() && READ_TIMEOUT_MS > 0) {
+                        if (now - in.lastReadNanos() >= TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS)) {
+                            reason = READ_TIMED_OUT;
+                        }
+                    } else if (IDLE_TIMEOUT_MS > 0 && !watchers.isWatching(session)
+                            && now - lastCommand >= TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS)) {
+                        reason = IDLE_CLOSED;
+                    }
+                    if (reason == null) continue;
+                    reaped.increment();
+                    // в двоичном режиме текстовое пояснение клиент не разберёт
+                    if (!session.binary) session.encoder().append(reason);
+                    break;
                 }
-                if (total >= 0 && free >= 0) break;
+                lastCommand = System.nanoTime();
+                boolean keep = session.binary
+                        ? handleFrame(in.array(), in.offset(), in.length(), session)
+                        : handleLine(in.array(), in.offset(), in.length(), session);
+                if (!keep) break;
+                // пока во входном буфере есть команды, копим ответы и отправляем их одной пачкой
+                if (!in.ready()) session.flush();
             }
+            session.flush();
         } catch (IOException e) {
-            System.err.println("Не удалось прочитать /proc/meminfo: " + e.getMessage());
+            System.err.println("Ошибка общения с клиентом: " + e.getMessage());
+        } finally {
+            if (session != null) watchers.unwatch(session);
+            try { client.close(); } catch (IOException ignored) {}
+            if (log.enabled()) log.log("Клиент отключился: " + client.getRemoteSocketAddress());
         }
-        return new long[]{ total, free };
     }
 
-    private static long parseKbLine(String line) {
-        String[] parts = line.split("\\s+");
-        return Long.parseLong(parts[1]);
+    /** Период пробуждения блокирующего чтения для проверки тайм-аутов; 0 — без тайм-аутов. */
+    private static int soTimeoutMillis() {
+        long t = READ_TIMEOUT_MS > 0 ? READ_TIMEOUT_MS : IDLE_TIMEOUT_MS;
+        if (IDLE_TIMEOUT_MS > 0) t = Math.min(t, IDLE_TIMEOUT_MS);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, t));
+    }
+
+    private static byte[] formatWatch(SwapSnapshot swap) {
+        ResponseEncoder e = watchEncoder;
+        e.reset();
+        e.append(WATCH_FREE).appendSize(swap.free()).append(WATCH_OF).appendSize(swap.total())
+                .append(" (").time(swap.sampledAt()).append(')').endLine();
+        return e.toByteArray();
     }
 
-    private static String formatBytes(long bytes) {
-        if (bytes >= 1024L * 1024 * 1024)
-            return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
-        else if (bytes >= 1024L * 1024)
-            return String.format("%.2f MB", bytes / (1024.0 * 1024));
-        else if (bytes >= 1024)
-            return String.format("%.2f KB", bytes / 1024.0);
-        else
-            return bytes + " B";
+    private static byte[] formatWatchFrame(SwapSnapshot swap) {
+        ResponseEncoder e = watchEncoder;
+        e.reset();
+        e.beginFrame(BinaryProtocol.SWAP_EVENT, BinaryProtocol.OK)
+                .putLong(swap.total()).putLong(swap.free()).putLong(swap.sampledAt()).endFrame();
+        return e.toByteArray();
     }
 }
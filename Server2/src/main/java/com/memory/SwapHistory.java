@@ -0,0 +1,79 @@
+package com.memory;
+
+/**
+ * Кольцевой буфер замеров swap фиксированного размера.
+ * Замеры хранятся в примитивных массивах, поэтому объём памяти
+ * (24 байта на точку) не зависит от времени работы сервера.
+ */
+final class SwapHistory {
+    private final long[] times;
+    private final long[] totals;
+    private final long[] frees;
+    private int head;   // индекс самой старой точки
+    private int size;
+
+    SwapHistory(int capacity) {
+        int cap = Math.max(1, capacity);
+        this.times = new long[cap];
+        this.totals = new long[cap];
+        this.frees = new long[cap];
+    }
+
+    synchronized void add(SwapSnapshot s) {
+        int cap = times.length;
+        if (size > 0 && s.sampledAt() < times[(head + size - 1) % cap]) {
+            return; // часы ушли назад — точку не берём, чтобы сохранить порядок для поиска
+        }
+        int idx;
+        if (size < cap) {
+            idx = (head + size) % cap;
+            size++;
+        } else {
+            idx = head;
+            head = (head + 1) % cap;
+        }
+        times[idx] = s.sampledAt();
+        totals[idx] = s.total();
+        frees[idx] = s.free();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /** Метка самой старой точки или Long.MAX_VALUE, если буфер пуст. */
+    synchronized long oldest() {
+        return size == 0 ? Long.MAX_VALUE : times[head];
+    }
+
+    /**
+     * Агрегирует точки из [from, to] в корзины по stepMs, см. {@link Bucketizer}.
+     * @return фактический шаг
+     */
+    synchronized long query(long from, long to, long stepMs, Bucketizer.Sink sink) {
+        long step = Bucketizer.effectiveStep(from, to, stepMs);
+        if (size == 0 || to < from) return step;
+
+        int cap = times.length;
+        Bucketizer b = new Bucketizer(from, step, sink);
+        for (int i = lowerBound(from); i < size; i++) {
+            int p = (head + i) % cap;
+            if (times[p] > to) break;
+            b.add(times[p], totals[p], frees[p]);
+        }
+        b.finish();
+        return step;
+    }
+
+    /** Логический индекс первой точки с меткой не раньше ts. */
+    private int lowerBound(long ts) {
+        int cap = times.length;
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[(head + mid) % cap] < ts) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
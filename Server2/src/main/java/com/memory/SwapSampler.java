@@ -0,0 +1,123 @@
+package com.memory;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Фоновый опрос swap. Поток-сэмплер с заданным интервалом обновляет общий
+ * неизменяемый снимок, обработчики команд читают его без обращения к procfs.
+ * Внеочередные замеры ({@link #fresh}) только обновляют снимок: слушатели,
+ * например история, получают замеры планового опроса с ровным шагом.
+ * На Linux используется {@link MeminfoParser}, на Windows — OperatingSystemMXBean.
+ */
+final class SwapSampler {
+    private final long intervalMs;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Server2-Sampler");
+        t.setDaemon(true);
+        return t;
+    });
+    private final MeminfoParser meminfo;
+    private final OperatingSystemMXBean mx;
+    private final List<Consumer<SwapSnapshot>> listeners = new CopyOnWriteArrayList<>();
+    private volatile SwapSnapshot current;
+
+    SwapSampler(long intervalMs) {
+        this.intervalMs = Math.max(1, intervalMs);
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            this.meminfo = null;
+            this.mx = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+        } else {
+            this.meminfo = openMeminfo();
+            this.mx = null;
+        }
+        this.current = sample();
+    }
+
+    void start() {
+        timer.scheduleAtFixedRate(this::refreshQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        if (meminfo != null) {
+            try { meminfo.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /** Слушатель получает замеры планового опроса по порядку, из потока сэмплера. */
+    void addListener(Consumer<SwapSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /** Последний снимок без какого-либо ввода-вывода. */
+    SwapSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Снимок не старше maxAgeMs; если кэш устарел, выполняется внеочередной замер.
+     * Он попадает только в кэш, слушателям не передаётся.
+     */
+    SwapSnapshot fresh(long maxAgeMs) {
+        SwapSnapshot s = current;
+        if (s.ageMillis(System.currentTimeMillis()) <= maxAgeMs) return s;
+        return refresh(maxAgeMs);
+    }
+
+    private synchronized SwapSnapshot refresh(long maxAgeMs) {
+        // пока ждали монитор, снимок мог обновить другой поток
+        SwapSnapshot s = current;
+        if (s.ageMillis(System.currentTimeMillis()) <= maxAgeMs) return s;
+        s = sample();
+        current = s;
+        return s;
+    }
+
+    private void refreshQuietly() {
+        try {
+            // слушатели вызываются вне монитора, чтобы запись на диск не держала fresh()
+            SwapSnapshot s = refresh(Long.MIN_VALUE);
+            for (Consumer<SwapSnapshot> l : listeners) {
+                l.accept(s);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка опроса swap: " + e.getMessage());
+        }
+    }
+
+    private SwapSnapshot sample() {
+        long total = -1, free = -1;
+        if (meminfo != null) {
+            try {
+                long[] v = meminfo.read();
+                total = v[MeminfoParser.SWAP_TOTAL];
+                free = v[MeminfoParser.SWAP_FREE];
+            } catch (IOException e) {
+                System.err.println("Не удалось прочитать /proc/meminfo: " + e.getMessage());
+            }
+        } else if (mx != null) {
+            total = mx.getTotalSwapSpaceSize();
+            free = mx.getFreeSwapSpaceSize();
+        }
+        return new SwapSnapshot(total, free, System.currentTimeMillis());
+    }
+
+    private static MeminfoParser openMeminfo() {
+        try {
+            return new MeminfoParser(Path.of("/proc/meminfo"));
+        } catch (IOException e) {
+            System.err.println("Не удалось открыть /proc/meminfo: " + e.getMessage());
+            return null;
+        }
+    }
+}
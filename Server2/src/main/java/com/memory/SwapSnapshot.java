@@ -0,0 +1,14 @@
+package com.memory;
+
+/**
+ * Неизменяемый снимок swap.
+ * @param total     объём swap в байтах (-1, если прочитать не удалось)
+ * @param free      свободный swap в байтах (-1, если прочитать не удалось)
+ * @param sampledAt момент замера, мс от эпохи
+ */
+record SwapSnapshot(long total, long free, long sampledAt) {
+
+    long ageMillis(long now) {
+        return now - sampledAt;
+    }
+}
@@ -0,0 +1,265 @@
+package com.memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Дисковое хранилище замеров swap, переживающее перезапуск.
+ * <p>
+ * Замеры пишутся записями фиксированной длины (ts, total, free) в сегментные
+ * файлы, отображённые в память через MappedByteBuffer. Сегмент закрывается по
+ * размеру или по времени, старые сегменты удаляются по сроку хранения.
+ * Для каждого сегмента в куче держится только разреженный индекс меток
+ * времени (каждая {@value #INDEX_EVERY}-я запись), остальное читается прямо
+ * из отображения. При старте последний сегмент сканируется до последней
+ * целиком записанной записи.
+ * <p>
+ * Писатель один — поток сэмплера: хранилище подписано только на плановые
+ * замеры {@link SwapSampler}, внеочередные сюда не попадают. Читатели работают
+ * без блокировок; Server2 выполняет их запросы в отдельных потоках, а не в
+ * event loop.
+ */
+final class SwapStore implements Closeable {
+    private static final int MAGIC = 0x53574150; // "SWAP"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int RECORD = 24;
+    private static final int INDEX_EVERY = 256;
+    private static final String PREFIX = "swap-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int recordsPerSegment;
+    private final long segmentMillis;
+    private final long retentionMillis;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment active;
+    /** Поток первой записи; с -ea проверяется, что пишет только он. */
+    private Thread writer;
+
+    /** Один сегментный файл. */
+    private static final class Segment {
+        final Path path;
+        final long firstTs;
+        final MappedByteBuffer map;
+        final int capacity;
+        long[] sparse = new long[16];
+        volatile int count;
+        volatile long lastTs;
+
+        Segment(Path path, long firstTs, MappedByteBuffer map, int capacity) {
+            this.path = path;
+            this.firstTs = firstTs;
+            this.map = map;
+            this.capacity = capacity;
+        }
+
+        long ts(int i) {
+            return map.getLong(HEADER + i * RECORD);
+        }
+
+        long total(int i) {
+            return map.getLong(HEADER + i * RECORD + 8);
+        }
+
+        long free(int i) {
+            return map.getLong(HEADER + i * RECORD + 16);
+        }
+
+        void indexIfNeeded(int i, long ts) {
+            if (i % INDEX_EVERY != 0) return;
+            int slot = i / INDEX_EVERY;
+            if (slot >= sparse.length) sparse = Arrays.copyOf(sparse, sparse.length * 2);
+            sparse[slot] = ts;
+        }
+
+        /** Индекс первой записи с меткой не раньше ts среди первых n записей. */
+        int lowerBound(long ts, int n) {
+            long[] idx = sparse;
+            int slots = (n + INDEX_EVERY - 1) / INDEX_EVERY;
+            int lo = 0, hi = slots;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (idx[mid] < ts) lo = mid + 1;
+                else hi = mid;
+            }
+            int from = Math.max(0, (lo - 1) * INDEX_EVERY);
+            int to = Math.min(n, lo * INDEX_EVERY);
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                if (ts(mid) < ts) from = mid + 1;
+                else to = mid;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Открывает хранилище и восстанавливает сегменты из каталога.
+     * @param segmentBytes   максимальный размер сегмента
+     * @param segmentMillis  максимальный охват сегмента по времени
+     * @param retentionMillis срок хранения; 0 — хранить всё
+     */
+    SwapStore(Path dir, long segmentBytes, long segmentMillis, long retentionMillis) throws IOException {
+        this.dir = dir;
+        this.recordsPerSegment = (int) Math.max(INDEX_EVERY,
+                Math.min((Integer.MAX_VALUE - HEADER) / RECORD, (segmentBytes - HEADER) / RECORD));
+        this.segmentMillis = Math.max(1, segmentMillis);
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            ds.forEach(files::add);
+        }
+        files.sort(null); // имена содержат метку первой записи с ведущими нулями
+        for (int i = 0; i < files.size(); i++) {
+            Path p = files.get(i);
+            boolean last = i == files.size() - 1;
+            try {
+                Segment s = open(p, last);
+                if (s != null) segments.add(s);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Пропущен повреждённый сегмент " + p.getFileName() + ": " + e.getMessage());
+            }
+        }
+        if (!segments.isEmpty()) {
+            Segment tail = segments.get(segments.size() - 1);
+            if (tail.map.isReadOnly()) {
+                return;
+            }
+            active = tail;
+        }
+    }
+
+    private Segment open(Path p, boolean writable) throws IOException {
+        String name = p.getFileName().toString();
+        long firstTs = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        try (FileChannel ch = writable
+                ? FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER) return null;
+            MappedByteBuffer map = writable
+                    ? ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, HEADER + (long) recordsPerSegment * RECORD))
+                    : ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new IOException("неизвестный формат");
+            }
+            int capacity = (int) ((map.capacity() - HEADER) / RECORD);
+            Segment s = new Segment(p, firstTs, map, capacity);
+            int n = 0;
+            long prev = Long.MIN_VALUE;
+            // запись считается целой, если её метка (пишется последней) ненулевая и не убывает
+            while (n < capacity) {
+                long ts = s.ts(n);
+                if (ts == 0 || ts < prev) break;
+                s.indexIfNeeded(n, ts);
+                prev = ts;
+                n++;
+            }
+            s.count = n;
+            s.lastTs = n == 0 ? firstTs : prev;
+            return s;
+        }
+    }
+
+    private Segment create(long firstTs) throws IOException {
+        Path p = dir.resolve(String.format("%s%019d%s", PREFIX, firstTs, SUFFIX));
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER + (long) recordsPerSegment * RECORD);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, RECORD);
+            return new Segment(p, firstTs, map, recordsPerSegment);
+        }
+    }
+
+    /** Добавляет замер. Вызывается только из потока сэмплера как слушатель планового опроса. */
+    void append(SwapSnapshot snap) {
+        assert isWriter() : "замер записан не из потока сэмплера: " + Thread.currentThread().getName();
+        long ts = snap.sampledAt();
+        try {
+            Segment s = active;
+            if (s != null && ts < s.lastTs) return; // часы ушли назад
+            if (s == null || s.count >= s.capacity || ts - s.firstTs >= segmentMillis) {
+                if (s != null) s.map.force();
+                s = create(ts);
+                active = s;
+                segments.add(s);
+                expire(ts);
+            }
+            int i = s.count;
+            int off = HEADER + i * RECORD;
+            s.map.putLong(off + 8, snap.total());
+            s.map.putLong(off + 16, snap.free());
+            s.map.putLong(off, ts);
+            s.indexIfNeeded(i, ts);
+            s.lastTs = ts;
+            s.count = i + 1;
+        } catch (IOException e) {
+            System.err.println("Не удалось записать замер в " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isWriter() {
+        if (writer == null) writer = Thread.currentThread();
+        return writer == Thread.currentThread();
+    }
+
+    private void expire(long now) {
+        if (retentionMillis <= 0) return;
+        for (Segment s : segments) {
+            if (s == active || now - s.lastTs <= retentionMillis) continue;
+            segments.remove(s);
+            try {
+                Files.deleteIfExists(s.path);
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить сегмент " + s.path.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Агрегирует замеры из [from, to] в корзины, см. {@link Bucketizer}.
+     * @return фактический шаг
+     */
+    long query(long from, long to, long stepMs, Bucketizer.Sink sink) {
+        long step = Bucketizer.effectiveStep(from, to, stepMs);
+        if (to < from) return step;
+        Bucketizer b = new Bucketizer(from, step, sink);
+        for (Segment s : segments) {
+            int n = s.count;
+            if (n == 0 || s.lastTs < from) continue;
+            if (s.firstTs > to) break;
+            for (int i = s.lowerBound(from, n); i < n; i++) {
+                long ts = s.ts(i);
+                if (ts > to) break;
+                b.add(ts, s.total(i), s.free(i));
+            }
+        }
+        b.finish();
+        return step;
+    }
+
+    @Override
+    public void close() {
+        Segment s = active;
+        if (s != null) s.map.force();
+    }
+}
@@ -0,0 +1,127 @@
+package com.memory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Потоковые подписки /watchswap. Все подписчики обслуживаются одним общим
+ * тиком и читают общий снимок {@link SwapSampler}; procfs читается заново,
+ * только если снимок старше интервала подписки. Клиенту уходит строка,
+ * только если свободный swap сдвинулся больше заданного порога.
+ */
+final class SwapWatchers {
+    private final SwapSampler sampler;
+    private final long tickMs;
+    private final Function<SwapSnapshot, byte[]> format;
+    private final Function<SwapSnapshot, byte[]> binaryFormat;
+    private final Map<Server2.Session, Watch> watches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Server2-Watch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Watch {
+        final long intervalMs;
+        final long minDelta;
+        final boolean binary;
+        long nextDue;
+        long lastTotal = Long.MIN_VALUE;
+        long lastFree = Long.MIN_VALUE;
+
+        Watch(long intervalMs, long minDelta, boolean binary, long now) {
+            this.intervalMs = intervalMs;
+            this.minDelta = minDelta;
+            this.binary = binary;
+            this.nextDue = now;
+        }
+    }
+
+    /**
+     * @param format       кадр для текстовых сессий
+     * @param binaryFormat кадр для сессий в двоичном режиме
+     */
+    SwapWatchers(SwapSampler sampler, long tickMs,
+                 Function<SwapSnapshot, byte[]> format, Function<SwapSnapshot, byte[]> binaryFormat) {
+        this.sampler = sampler;
+        this.tickMs = Math.max(1, tickMs);
+        this.format = format;
+        this.binaryFormat = binaryFormat;
+    }
+
+    void start() {
+        timer.scheduleAtFixedRate(this::tickQuietly, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Оформляет или заменяет подписку клиента.
+     * @return фактический интервал (не меньше шага общего тика)
+     */
+    long watch(Server2.Session client, long intervalMs, long minDelta, boolean binary) {
+        long interval = Math.max(tickMs, intervalMs);
+        watches.put(client, new Watch(interval, Math.max(0, minDelta), binary, System.currentTimeMillis()));
+        return interval;
+    }
+
+    boolean unwatch(Server2.Session client) {
+        return watches.remove(client) != null;
+    }
+
+    boolean isWatching(Server2.Session client) {
+        return watches.containsKey(client);
+    }
+
+    int size() {
+        return watches.size();
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка рассылки /watchswap: " + e.getMessage());
+        }
+    }
+
+    private void tick() {
+        if (watches.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        SwapSnapshot encoded = null;
+        byte[] frame = null;
+        byte[] binaryFrame = null;
+        for (Map.Entry<Server2.Session, Watch> e : watches.entrySet()) {
+            Watch w = e.getValue();
+            if (now < w.nextDue) continue;
+            w.nextDue = now + w.intervalMs;
+            // общий снимок сэмплера; внеочередной замер — только если он старше интервала подписки
+            SwapSnapshot snap = sampler.fresh(w.intervalMs);
+            if (snap != encoded) {
+                encoded = snap;
+                frame = null;
+                binaryFrame = null;
+            }
+            boolean changed = w.lastFree == Long.MIN_VALUE
+                    || snap.total() != w.lastTotal
+                    || Math.abs(snap.free() - w.lastFree) > w.minDelta;
+            if (!changed) continue;
+            w.lastTotal = snap.total();
+            w.lastFree = snap.free();
+            // кадр кодируется один раз на снимок и разделяется всеми получателями
+            if (w.binary) {
+                if (binaryFrame == null) binaryFrame = binaryFormat.apply(snap);
+                e.getKey().push(binaryFrame);
+            } else {
+                if (frame == null) frame = format.apply(snap);
+                e.getKey().push(frame);
+            }
+        }
+    }
+}
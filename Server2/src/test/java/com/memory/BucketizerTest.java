@@ -0,0 +1,57 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BucketizerTest {
+
+    @Test
+    void smallRangeKeepsRequestedStep() {
+        assertEquals(1000, Bucketizer.effectiveStep(0, 60_000, 1000));
+        assertEquals(1, Bucketizer.effectiveStep(0, 999, 0));
+    }
+
+    @Test
+    void wideRangeIsCappedAtMaxBuckets() {
+        long step = Bucketizer.effectiveStep(0, 9_999_999, 1);
+        assertTrue(10_000_000 / step <= Bucketizer.MAX_BUCKETS);
+    }
+
+    @Test
+    void extremeRangeDoesNotOverflow() {
+        long step = Bucketizer.effectiveStep(0, Long.MAX_VALUE, 1);
+        assertTrue(step > 0);
+        assertTrue(Long.MAX_VALUE / step < Bucketizer.MAX_BUCKETS);
+
+        step = Bucketizer.effectiveStep(Long.MIN_VALUE, Long.MAX_VALUE, 1);
+        assertTrue(step > 0);
+        assertTrue(Long.divideUnsigned(-1L, step) < Bucketizer.MAX_BUCKETS);
+    }
+
+    @Test
+    void historyOverWholeTimeline() {
+        SwapHistory history = new SwapHistory(16);
+        history.add(new SwapSnapshot(100, 40, 1_000));
+        history.add(new SwapSnapshot(100, 60, 2_000));
+        List<long[]> buckets = new ArrayList<>();
+        Bucketizer.Sink sink = (start, count, min, max, avg, total) ->
+                buckets.add(new long[] {start, count, min, max, avg});
+
+        history.query(0, Long.MAX_VALUE, 1, sink);
+        assertEquals(1, buckets.size());
+        assertEquals(0, buckets.get(0)[0]);
+        assertEquals(2, buckets.get(0)[1]);
+        assertEquals(50, buckets.get(0)[4]);
+
+        buckets.clear();
+        history.query(Long.MIN_VALUE, Long.MAX_VALUE, 1, sink);
+        assertEquals(1, buckets.size());
+        assertEquals(2, buckets.get(0)[1]);
+        assertTrue(buckets.get(0)[0] <= 1_000);
+    }
+}
@@ -0,0 +1,299 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Агрегатор swap по парку Server2: один процесс держит по соединению с
+ * каждым сервером и отвечает на сводные запросы из последнего снимка опроса,
+ * так что панели и скрипты делают один запрос вместо сотен.
+ * Настройки — системными свойствами:
+ * aggregator.endpoints (host:port через запятую), aggregator.port,
+ * aggregator.refreshMs (период опроса), aggregator.timeoutMs (сколько раунд
+ * ждёт одного хоста), aggregator.maxClients, aggregator.admissionQueue,
+ * aggregator.admissionWaitMs, aggregator.retryAfterSec, aggregator.idleTimeoutMs.
+ * После /binary доступен кадр {@link BinaryProtocol#GET_SWAP} с суммой по парку.
+ */
+public class Aggregator {
+    private static final int PORT = Integer.getInteger("aggregator.port", 7777);
+    private static final String ENDPOINTS = System.getProperty("aggregator.endpoints", "localhost:6666");
+    private static final long REFRESH_MS = Long.getLong("aggregator.refreshMs", 1000);
+    private static final long TIMEOUT_MS = Long.getLong("aggregator.timeoutMs", 500);
+    private static final int MAX_CLIENTS = Integer.getInteger("aggregator.maxClients", 64);
+    private static final int ADMISSION_QUEUE = Integer.getInteger("aggregator.admissionQueue", 16);
+    private static final long ADMISSION_WAIT_MS = Long.getLong("aggregator.admissionWaitMs", 5000);
+    private static final int RETRY_AFTER_SEC = Integer.getInteger("aggregator.retryAfterSec", 5);
+    private static final int IDLE_TIMEOUT_MS = Integer.getInteger("aggregator.idleTimeoutMs", 300_000);
+    private static final int MAX_LINE = 8192;
+    private static final int DEFAULT_WORST = 10;
+
+    private static final byte[] GREETING = ResponseEncoder.utf8(
+            "Агрегатор swap. Команды: /fleet, /worst <N>, /hosts, /host <host:port>, /stats, /exit");
+    private static final byte[] OVERLOADED = ResponseEncoder.utf8(
+            "Сервер переполнен. Попробуйте через " + RETRY_AFTER_SEC + " с.\n");
+    private static final byte[] IDLE_CLOSED = ResponseEncoder.utf8("Соединение закрыто: нет команд\n");
+    private static final byte[] NO_DATA = ResponseEncoder.utf8("нет данных");
+    private static final byte[] WORST_USAGE = ResponseEncoder.utf8("Ошибка: используйте /worst <N>, N > 0");
+    private static final byte[] HOST_USAGE = ResponseEncoder.utf8("Ошибка: используйте /host <host:port>");
+    private static final byte[] HOST_UNKNOWN = ResponseEncoder.utf8("Хост не опрашивается: ");
+    private static final byte[] NOT_READY = ResponseEncoder.utf8("Первый опрос ещё не завершён");
+    private static final byte[] UNKNOWN = ResponseEncoder.utf8(
+            "Неизвестная команда, введите /fleet, /worst <N>, /hosts, /host <host:port>, /stats или /exit");
+
+    private static final Semaphore clientSemaphore = new Semaphore(MAX_CLIENTS);
+    private static final ServerMetrics metrics = new ServerMetrics("Aggregator");
+    private static final AsyncLog log = new AsyncLog("Aggregator-Log",
+            Integer.getInteger("aggregator.logRate", 100), 4096);
+    private static FleetPoller poller;
+    private static AdmissionQueue<Socket> admission;
+
+    /** Сессия клиента; объекты переиспользуются на всё время соединения. */
+    private static final class Session {
+        final ResponseEncoder encoder = new ResponseEncoder();
+        final ByteSlice args = new ByteSlice();
+        boolean binary;
+    }
+
+    public static void main(String[] args) {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+        try {
+            for (String s : ENDPOINTS.split(",")) {
+                if (!s.isBlank()) endpoints.add(parseEndpoint(s.trim()));
+            }
+            if (endpoints.isEmpty()) throw new IllegalArgumentException("список пуст");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Неверный aggregator.endpoints (" + ENDPOINTS + "): " + e.getMessage());
+            System.exit(1);
+        }
+
+        ServerSocket server = null;
+        try {
+            poller = new FleetPoller(endpoints, REFRESH_MS, TIMEOUT_MS, metrics);
+            server = new ServerSocket(PORT);
+            System.out.println("Агрегатор запущен на порту " + PORT + ", опрашивает хостов: " + endpoints.size()
+                    + " каждые " + REFRESH_MS + " мс");
+        } catch (BindException be) {
+            System.err.println("Не удалось запустить агрегатор: порт " + PORT + " уже занят.");
+            System.exit(1);
+        } catch (IOException ioe) {
+            System.err.println("Ошибка при запуске агрегатора: " + ioe.getMessage());
+            System.exit(1);
+        }
+        Thread pollThread = new Thread(poller, "Aggregator-Poller");
+        pollThread.setDaemon(true);
+        pollThread.start();
+
+        admission = new AdmissionQueue<>("Aggregator", clientSemaphore,
+                ADMISSION_QUEUE, ADMISSION_WAIT_MS, new AdmissionQueue.Gate<>() {
+                    @Override
+                    public void admit(Socket client) {
+                        metrics.accepted();
+                        new Thread(() -> {
+                            try {
+                                handleClient(client);
+                            } finally {
+                                admission.release();
+                            }
+                        }, "Aggregator-Worker").start();
+                    }
+
+                    @Override
+                    public void reject(Socket client) {
+                        metrics.rejected();
+                        try (client; OutputStream out = client.getOutputStream()) {
+                            out.write(OVERLOADED);
+                        } catch (IOException ignored) {
+                            // клиент мог уйти, не дождавшись
+                        }
+                    }
+                });
+        metrics.gauge("hosts", poller::size);
+        metrics.gauge("hosts.ok", () -> poller.snapshot().ok);
+        metrics.gauge("hosts.late", () -> poller.snapshot().late);
+        metrics.gauge("hosts.down", () -> poller.snapshot().down);
+        metrics.gauge("admission.waiting", admission::waiting);
+        metrics.gauge("log.suppressed", log::suppressed);
+        metrics.registerMBean();
+
+        while (true) {
+            try {
+                admission.offer(server.accept());
+            } catch (IOException e) {
+                System.err.println("Ошибка в основном цикле агрегатора: " + e.getMessage());
+                if (server.isClosed()) break;
+            }
+        }
+        poller.stop();
+    }
+
+    /** host:port; хост без порта не принимается — у каждого Server2 свой порт. */
+    private static InetSocketAddress parseEndpoint(String s) {
+        int colon = s.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("нет порта в " + s);
+        try {
+            return InetSocketAddress.createUnresolved(s.substring(0, colon), Integer.parseInt(s.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("неверный порт в " + s);
+        }
+    }
+
+    private static final CommandRegistry<Session> COMMANDS = new CommandRegistry<Session>()
+            .register("/fleet", Aggregator::fleet)
+            .register("/worst", Aggregator::worst)
+            .register("/hosts", Aggregator::hosts)
+            .register("/host", Aggregator::host)
+            .register("/stats", (session, args) -> {
+                metrics.appendTo(session.encoder.timestamp());
+                return true;
+            })
+            .register("/exit", (session, args) -> false)
+            .register(BinaryProtocol.SWITCH_COMMAND, (session, args) -> {
+                BinaryProtocol.hello(session.encoder);
+                session.binary = true;
+                return true;
+            })
+            .unknown((session, name) -> {
+                session.encoder.append(UNKNOWN).endLine();
+                return true;
+            })
+            .metrics(metrics);
+
+    /** Двоичный режим: сумма по парку в том же виде, что GET_SWAP одного Server2. */
+    private static final FrameRegistry<Session> FRAMES = new FrameRegistry<Session>()
+            .register(BinaryProtocol.GET_SWAP, "bin:/fleet", (session, args) -> {
+                FleetSnapshot s = poller.snapshot();
+                session.encoder.beginFrame(BinaryProtocol.GET_SWAP, BinaryProtocol.OK)
+                        .putLong(s.total).putLong(s.free).putLong(s.builtAt).endFrame();
+                return true;
+            })
+            .register(BinaryProtocol.EXIT, "bin:/exit", (session, args) -> false)
+            .unknown((session, frame) -> {
+                BinaryProtocol.status(session.encoder, frame.isEmpty() ? 0 : frame.byteAt(0), BinaryProtocol.UNKNOWN);
+                return true;
+            })
+            .metrics(metrics);
+
+    private static boolean fleet(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder;
+        FleetSnapshot s = poller.snapshot();
+        if (s.builtAt == 0) {
+            out.append(NOT_READY).endLine();
+            return true;
+        }
+        out.append("Хостов: ").append(s.hosts.size()).append(", ответили ").append(s.ok)
+                .append(", опаздывают ").append(s.late).append(", недоступны ").append(s.down).endLine();
+        // недоступные хосты не суммируются: их последние значения устарели
+        out.append("Swap: занято ").appendSize(s.total - s.free).append(" из ").appendSize(s.total);
+        appendPercent(out, s.total <= 0 ? 0 : (s.total - s.free) * 1000 / s.total);
+        out.append(", свободно ").appendSize(s.free).append(" (опрос ").time(s.builtAt).append(')').endLine();
+        return true;
+    }
+
+    private static boolean worst(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder;
+        int n = DEFAULT_WORST;
+        try {
+            if (args.hasNext()) n = args.nextInt();
+            if (n <= 0 || args.hasNext()) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            out.append(WORST_USAGE).endLine();
+            return true;
+        }
+        FleetSnapshot s = poller.snapshot();
+        List<FleetSnapshot.Host> worst = s.worst;
+        for (int i = 0; i < Math.min(n, worst.size()); i++) {
+            appendHost(out.append(i + 1).append(". "), worst.get(i));
+        }
+        out.append("Хостов с данными: ").append(worst.size()).append(" из ").append(s.hosts.size());
+        if (s.down > 0) out.append(", недоступны и не учтены: ").append(s.down);
+        out.endLine();
+        return true;
+    }
+
+    private static boolean hosts(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder;
+        FleetSnapshot s = poller.snapshot();
+        for (FleetSnapshot.Host h : s.hosts) appendHost(out, h);
+        out.append("Всего хостов: ").append(s.hosts.size()).endLine();
+        return true;
+    }
+
+    private static boolean host(Session session, ByteSlice args) {
+        ResponseEncoder out = session.encoder;
+        if (args.isEmpty()) {
+            out.append(HOST_USAGE).endLine();
+            return true;
+        }
+        String address = args.toString().trim();
+        FleetSnapshot.Host h = poller.snapshot().byAddress.get(address);
+        if (h == null) {
+            out.append(HOST_UNKNOWN).append(address).endLine();
+        } else {
+            appendHost(out, h);
+        }
+        return true;
+    }
+
+    private static void appendHost(ResponseEncoder out, FleetSnapshot.Host h) {
+        out.append(h.address()).append(": ");
+        if (h.known()) {
+            out.append("занято ").appendSize(h.used()).append(" из ").appendSize(h.total());
+            appendPercent(out, h.usedPermille());
+            out.append(", замер ").time(h.sampledAt());
+        } else {
+            out.append(NO_DATA);
+        }
+        if (h.state() != FleetSnapshot.State.OK) {
+            out.append(" [").append(h.state().text);
+            if (!h.error().isEmpty()) out.append(": ").append(h.error());
+            out.append(']');
+        }
+        out.endLine();
+    }
+
+    /** Доля в десятых процента: целочисленно, без форматирования double. */
+    private static void appendPercent(ResponseEncoder out, long permille) {
+        out.append(" (").append(permille / 10).append('.').append(permille % 10).append("%)");
+    }
+
+    private static void handleClient(Socket client) {
+        if (log.enabled()) log.log("Клиент подключился: " + client.getRemoteSocketAddress());
+        Session session = new Session();
+        try (InputStream is = client.getInputStream(); OutputStream os = client.getOutputStream()) {
+            LineReader in = new LineReader(is, MAX_LINE, metrics);
+            session.encoder.append(GREETING).endLine();
+            metrics.bytesOut(session.encoder.writeTo(os));
+            client.setSoTimeout(Math.max(0, IDLE_TIMEOUT_MS));
+            while (true) {
+                boolean keep;
+                try {
+                    if (!(session.binary ? in.nextFrame() : in.next())) break;
+                    keep = session.binary
+                            ? FRAMES.dispatch(session, in.array(), in.offset(), in.length(), session.args)
+                            : COMMANDS.dispatch(session, in.array(), in.offset(), in.length(), session.args);
+                } catch (SocketTimeoutException e) {
+                    if (!session.binary) session.encoder.append(IDLE_CLOSED);
+                    break;
+                }
+                if (!keep) break;
+                // пока во входном буфере есть команды, копим ответы и отправляем их одной пачкой
+                if (!in.ready()) metrics.bytesOut(session.encoder.writeTo(os));
+            }
+            metrics.bytesOut(session.encoder.writeTo(os));
+        } catch (IOException e) {
+            System.err.println("Ошибка общения с клиентом: " + e.getMessage());
+        } finally {
+            try { client.close(); } catch (IOException ignored) {}
+            if (log.enabled()) log.log("Клиент отключился: " + client.getRemoteSocketAddress());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.memory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Опрос парка Server2 из одного потока через один Selector. С каждым хостом
+ * держится постоянное соединение в двоичном режиме ({@link BinaryProtocol});
+ * раз в refreshMs всем сразу уходит {@link BinaryProtocol#GET_SWAP}, не
+ * дожидаясь ответов на прошлые запросы (до {@value #MAX_IN_FLIGHT} в полёте).
+ * Раунд закрывается, когда ответили все или истёк timeoutMs: медленный хост
+ * попадает в снимок с прошлыми значениями и не задерживает остальных.
+ * Зависшее или оборванное соединение переоткрывается с растущей задержкой.
+ */
+final class FleetPoller implements Runnable {
+    private static final byte[] SWITCH = (BinaryProtocol.SWITCH_COMMAND + "\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GET_SWAP = {0, 0, 0, 1, BinaryProtocol.GET_SWAP};
+    private static final byte[] OVERLOADED = "переполнен".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int MAX_FRAME = 4096;
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final class Host {
+        final String name;
+        final int port;
+        final String address;
+        InetSocketAddress resolved;
+        SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_FRAME);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        /** Моменты отправки запросов без ответа, System.nanoTime(). */
+        final ArrayDeque<Long> inFlight = new ArrayDeque<>();
+        boolean greeted;
+        boolean ready;
+        long connectStarted;
+        long nextConnectAt;
+        long backoffMs = MIN_BACKOFF_MS;
+        long total = -1;
+        long free = -1;
+        long sampledAt;
+        long answeredAt;    // nanoTime последнего ответа
+        String error = "";
+
+        Host(String name, int port) {
+            this.name = name;
+            this.port = port;
+            this.address = name + ":" + port;
+        }
+    }
+
+    private final List<Host> hosts = new ArrayList<>();
+    private final long refreshMs;
+    private final long timeoutNanos;
+    /** После такого молчания соединение считается зависшим и переоткрывается. */
+    private final long stallNanos;
+    private final Selector selector;
+    private final ServerMetrics metrics;
+    private volatile FleetSnapshot snapshot = FleetSnapshot.EMPTY;
+    private volatile boolean running = true;
+
+    private long roundStarted;
+    private boolean roundOpen;
+    private int expected;
+    private int answered;
+
+    /**
+     * @param endpoints адреса Server2 вида host:port
+     * @param timeoutMs сколько раунд ждёт ответа одного хоста
+     */
+    FleetPoller(List<InetSocketAddress> endpoints, long refreshMs, long timeoutMs, ServerMetrics metrics) throws IOException {
+        for (InetSocketAddress a : endpoints) hosts.add(new Host(a.getHostString(), a.getPort()));
+        this.refreshMs = Math.max(10, refreshMs);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMs));
+        this.stallNanos = Math.max(5 * timeoutNanos, TimeUnit.MILLISECONDS.toNanos(3 * this.refreshMs));
+        this.selector = Selector.open();
+        this.metrics = metrics;
+    }
+
+    FleetSnapshot snapshot() {
+        return snapshot;
+    }
+
+    int size() {
+        return hosts.size();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextRound = System.nanoTime();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (now - nextRound >= 0) {
+                    if (roundOpen) publish(now);
+                    startRound(now);
+                    nextRound = now + TimeUnit.MILLISECONDS.toNanos(refreshMs);
+                }
+                long wake = maintain(now, nextRound);
+                if (roundOpen && (answered == expected || now - roundStarted >= timeoutNanos)) {
+                    publish(now);
+                } else if (roundOpen) {
+                    wake = Math.min(wake, roundStarted + timeoutNanos - now);
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wake)));
+                var it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    Host h = (Host) k.attachment();
+                    if (k.isValid() && k.isConnectable()) finishConnect(h);
+                    if (k.isValid() && k.isReadable()) read(h);
+                    if (k.isValid() && k.isWritable()) flush(h);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка Selector агрегатора: " + e.getMessage());
+        } finally {
+            for (Host h : hosts) disconnect(h);
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void startRound(long now) {
+        roundStarted = now;
+        roundOpen = true;
+        expected = 0;
+        answered = 0;
+        for (Host h : hosts) {
+            if (!h.ready || h.inFlight.size() >= MAX_IN_FLIGHT) continue;
+            h.inFlight.add(now);
+            send(h, GET_SWAP);
+            expected++;
+        }
+    }
+
+    /**
+     * Подключения, тайм-ауты подключения и зависшие соединения.
+     * @return сколько наносекунд можно спать до следующего события
+     */
+    private long maintain(long now, long nextRound) {
+        long wake = nextRound - now;
+        for (Host h : hosts) {
+            if (h.channel == null) {
+                if (now - h.nextConnectAt >= 0) {
+                    connect(h, now);
+                } else {
+                    wake = Math.min(wake, h.nextConnectAt - now);
+                }
+            } else if (!h.ready) {
+                if (now - h.connectStarted > stallNanos) fail(h, "нет ответа при подключении", now);
+            } else {
+                Long oldest = h.inFlight.peek();
+                if (oldest != null && now - oldest > stallNanos) fail(h, "соединение зависло", now);
+            }
+        }
+        return wake;
+    }
+
+    private void connect(Host h, long now) {
+        h.connectStarted = now;
+        try {
+            // адрес разрешается один раз и заново только после ошибки: DNS блокирует поток опроса
+            if (h.resolved == null || h.resolved.isUnresolved()) h.resolved = new InetSocketAddress(h.name, h.port);
+            SocketChannel ch = SocketChannel.open();
+            h.channel = ch;
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            boolean connected = ch.connect(h.resolved);
+            h.key = ch.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, h);
+            send(h, SWITCH);
+        } catch (IOException | RuntimeException e) {
+            h.resolved = null;
+            fail(h, String.valueOf(e.getMessage()), now);
+        }
+    }
+
+    private void finishConnect(Host h) {
+        try {
+            h.channel.finishConnect();
+            h.key.interestOps(h.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            h.resolved = null;
+            fail(h, String.valueOf(e.getMessage()), System.nanoTime());
+        }
+    }
+
+    private void send(Host h, byte[] bytes) {
+        h.out.add(ByteBuffer.wrap(bytes));
+        if (h.channel.isConnected()) flush(h);
+    }
+
+    private void flush(Host h) {
+        try {
+            ByteBuffer b;
+            while ((b = h.out.peek()) != null) {
+                h.channel.write(b);
+                if (b.hasRemaining()) {
+                    h.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                h.out.poll();
+            }
+            h.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            fail(h, String.valueOf(e.getMessage()), System.nanoTime());
+        }
+    }
+
+    private void read(Host h) {
+        long now = System.nanoTime();
+        int n;
+        try {
+            n = h.channel.read(h.in);
+        } catch (IOException e) {
+            fail(h, String.valueOf(e.getMessage()), now);
+            return;
+        }
+        if (n < 0) {
+            fail(h, "соединение закрыто", now);
+            return;
+        }
+        ByteBuffer in = h.in;
+        in.flip();
+        byte[] arr = in.array();
+        int p = in.position();
+        int limit = in.limit();
+        if (!h.greeted) {
+            int nl = p;
+            while (nl < limit && arr[nl] != '\n') nl++;
+            if (nl == limit) {
+                in.position(p).compact();
+                if (!in.hasRemaining()) fail(h, "слишком длинное приветствие", now);
+                return;
+            }
+            if (contains(arr, p, nl - p, OVERLOADED)) {
+                fail(h, "сервер переполнен", now);
+                return;
+            }
+            h.greeted = true;
+            p = nl + 1;
+        }
+        while (limit - p >= BinaryProtocol.LENGTH_BYTES) {
+            int len = (arr[p] & 0xFF) << 24 | (arr[p + 1] & 0xFF) << 16 | (arr[p + 2] & 0xFF) << 8 | (arr[p + 3] & 0xFF);
+            if (len < 2 || len > MAX_FRAME - BinaryProtocol.LENGTH_BYTES) {
+                fail(h, "неверный кадр", now);
+                return;
+            }
+            if (limit - p - BinaryProtocol.LENGTH_BYTES < len) break;
+            onFrame(h, arr, p + BinaryProtocol.LENGTH_BYTES, len, now);
+            p += BinaryProtocol.LENGTH_BYTES + len;
+        }
+        in.position(p).compact();
+    }
+
+    private void onFrame(Host h, byte[] buf, int off, int len, long now) {
+        byte command = buf[off];
+        if (command == BinaryProtocol.HELLO) {
+            h.ready = true;
+            h.backoffMs = MIN_BACKOFF_MS;
+            h.error = "";
+            return;
+        }
+        if (command != BinaryProtocol.GET_SWAP) return;
+        Long sent = h.inFlight.poll();
+        if (sent == null) return;
+        if (buf[off + 1] != BinaryProtocol.OK || len < 2 + 3 * Long.BYTES) {
+            h.error = "ошибка ответа " + buf[off + 1];
+            return;
+        }
+        h.total = readLong(buf, off + 2);
+        h.free = readLong(buf, off + 2 + Long.BYTES);
+        h.sampledAt = readLong(buf, off + 2 + 2 * Long.BYTES);
+        h.answeredAt = now;
+        h.error = "";
+        metrics.command("upstream:/getswap").record(now - sent);
+        if (roundOpen && sent - roundStarted >= 0) answered++;
+    }
+
+    /** Закрывает раунд: снимок для команд собирается здесь, а не на каждый запрос. */
+    private void publish(long now) {
+        roundOpen = false;
+        List<FleetSnapshot.Host> list = new ArrayList<>(hosts.size());
+        long timeoutMs = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+        for (Host h : hosts) {
+            FleetSnapshot.State state;
+            String error = h.error;
+            if (!h.ready) {
+                state = FleetSnapshot.State.DOWN;
+            } else if (h.answeredAt - roundStarted >= 0 && h.answeredAt != 0) {
+                state = FleetSnapshot.State.OK;
+            } else {
+                state = FleetSnapshot.State.LATE;
+                if (error.isEmpty()) error = "нет ответа за " + timeoutMs + " мс";
+            }
+            list.add(new FleetSnapshot.Host(h.address, state, h.total, h.free, h.sampledAt, error));
+        }
+        snapshot = new FleetSnapshot(System.currentTimeMillis(), list);
+    }
+
+    /** Закрывает соединение и планирует повтор со случайным разбросом. */
+    private void fail(Host h, String reason, long now) {
+        disconnect(h);
+        long delay = h.backoffMs + ThreadLocalRandom.current().nextLong(h.backoffMs / 2 + 1);
+        h.nextConnectAt = now + TimeUnit.MILLISECONDS.toNanos(delay);
+        h.backoffMs = Math.min(MAX_BACKOFF_MS, h.backoffMs * 2);
+        h.error = reason;
+    }
+
+    private static void disconnect(Host h) {
+        if (h.key != null) h.key.cancel();
+        if (h.channel != null) {
+            try { h.channel.close(); } catch (IOException ignored) {}
+        }
+        h.channel = null;
+        h.key = null;
+        h.out.clear();
+        h.in.clear();
+        h.inFlight.clear();
+        h.greeted = false;
+        h.ready = false;
+    }
+
+    private static long readLong(byte[] buf, int off) {
+        long v = 0;
+        for (int i = 0; i < Long.BYTES; i++) v = v << 8 | (buf[off + i] & 0xFF);
+        return v;
+    }
+
+    private static boolean contains(byte[] buf, int off, int len, byte[] needle) {
+        outer:
+        for (int i = off; i <= off + len - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый итог одного раунда опроса: значения каждого хоста, их
+ * сортировка по занятости swap и суммы по парку. Команды агрегатора
+ * отвечают из последнего снимка и не ждут ни одного хоста.
+ */
+final class FleetSnapshot {
+    enum State {
+        /** Ответил в текущем раунде. */
+        OK("ок"),
+        /** Подключён, но не ответил за тайм-аут; показаны последние значения. */
+        LATE("опаздывает"),
+        /** Нет соединения; последние значения устарели и в суммы не входят. */
+        DOWN("недоступен");
+
+        final String text;
+
+        State(String text) {
+            this.text = text;
+        }
+    }
+
+    /** Значения хоста; total = -1, пока ответа не было ни разу. */
+    record Host(String address, State state, long total, long free, long sampledAt, String error) {
+        boolean known() {
+            return total >= 0;
+        }
+
+        /** Входит ли хост в суммы по парку и в {@link #worst}. */
+        boolean counted() {
+            return known() && state != State.DOWN;
+        }
+
+        long used() {
+            return total - free;
+        }
+
+        /** Занятая доля swap в десятых долях процента; 0, если swap нет. */
+        long usedPermille() {
+            return total <= 0 ? 0 : (total - free) * 1000 / total;
+        }
+    }
+
+    private static final Comparator<Host> WORST_FIRST = Comparator
+            .comparingLong(Host::usedPermille).thenComparingLong(Host::used).reversed();
+
+    static final FleetSnapshot EMPTY = new FleetSnapshot(0, List.of());
+
+    final long builtAt;
+    /** В порядке конфигурации. */
+    final List<Host> hosts;
+    /** Доступные хосты с данными, от самого занятого. */
+    final List<Host> worst;
+    final Map<String, Host> byAddress;
+    /** Суммы по доступным хостам с данными, включая опаздывающих. */
+    final long total;
+    final long free;
+    final int ok;
+    final int late;
+    final int down;
+
+    FleetSnapshot(long builtAt, List<Host> hosts) {
+        this.builtAt = builtAt;
+        this.hosts = List.copyOf(hosts);
+        List<Host> known = new ArrayList<>();
+        Map<String, Host> map = new HashMap<>();
+        long t = 0, f = 0;
+        int o = 0, l = 0, d = 0;
+        for (Host h : hosts) {
+            map.put(h.address(), h);
+            switch (h.state()) {
+                case OK -> o++;
+                case LATE -> l++;
+                case DOWN -> d++;
+            }
+            if (!h.counted()) continue;
+            known.add(h);
+            t += h.total();
+            f += h.free();
+        }
+        known.sort(WORST_FIRST);
+        this.worst = Collections.unmodifiableList(known);
+        this.byAddress = Map.copyOf(map);
+        this.total = t;
+        this.free = f;
+        this.ok = o;
+        this.late = l;
+        this.down = d;
+    }
+}
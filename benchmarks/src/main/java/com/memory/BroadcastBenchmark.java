@@ -0,0 +1,99 @@
+package com.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Рассылка resize через {@link ResizeBroadcaster} подписчикам в памяти.
+ * Одна операция — публикация кадра и ожидание, пока его получат все
+ * подписчики, то есть полная стоимость одного события.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"1", "100", "10000"})
+    public int subscribers;
+
+    @Param({"2"})
+    public int writerThreads;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private ExecutorService writers;
+    private ResizeBroadcaster broadcaster;
+    private long expected;
+    private final byte[] frame = new ResponseEncoder(CachedClock.SYSTEM, 64).timestamp()
+            .append("Размер окна: 640×480").endLine().toByteArray();
+
+    /** Сокет без сети: запись только считается. */
+    private final class MemorySocket extends Socket {
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                delivered.incrementAndGet();
+            }
+        };
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread t = new Thread(r, "Bench-Broadcast");
+            t.setDaemon(true);
+            return t;
+        });
+        // без отключения отстающих: ожидание доставки делает отставание нулевым
+        broadcaster = new ResizeBroadcaster(writers, Integer.MAX_VALUE, TimeUnit.MINUTES.toMillis(1));
+        for (int i = 0; i < subscribers; i++) {
+            broadcaster.subscribe(new Object(), new MemorySocket(), new ReentrantLock());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writers.shutdownNow();
+    }
+
+    @Benchmark
+    public long publishAndDeliver() {
+        expected += subscribers;
+        broadcaster.publish(frame);
+        long d;
+        while ((d = delivered.get()) < expected) {
+            Thread.onSpinWait();
+        }
+        return d;
+    }
+}
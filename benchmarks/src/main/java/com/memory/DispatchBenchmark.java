@@ -0,0 +1,135 @@
+package com.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор и выполнение команд без сети: настоящие {@link WindowCommands#handleLine}
+ * Server1 и {@link Server2#handleLine} с ответом в буфер сессии.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    /** Сессия без сокета: ответы копятся в буфере и сбрасываются на каждой операции. */
+    static final class MemorySession implements Server2.Session {
+        final ResponseEncoder encoder = new ResponseEncoder();
+        final ByteSlice args = new ByteSlice();
+
+        @Override
+        public ResponseEncoder encoder() {
+            return encoder;
+        }
+
+        @Override
+        public void push(byte[] frame) {
+        }
+
+        @Override
+        public ByteSlice args() {
+            return args;
+        }
+
+        @Override
+        public void switchToBinary() {
+        }
+
+        @Override
+        public <T> void replyWhenDone(CompletableFuture<T> work, Server2.Reply<T> reply) {
+            Server2.writeReply(encoder, work, reply);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Server1Line {
+        @Param({"/getwindow", "/RESIZE 640 480", "/rename Новое окно", "/nope"})
+        public String line;
+        byte[] bytes;
+
+        @Setup
+        public void setup() {
+            bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Server2Line {
+        @Param({"/getswap", "/GetSwap 60000", "/unwatch", "/nope"})
+        public String line;
+        byte[] bytes;
+
+        @Setup
+        public void setup() {
+            bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Сессия Server1 без сокета: подписки ничего не делают, ответы копятся в буфере. */
+    static final class WindowSession implements WindowCommands.Session {
+        final ResponseEncoder encoder = new ResponseEncoder();
+
+        @Override
+        public ResponseEncoder encoder() {
+            return encoder;
+        }
+
+        @Override
+        public void subscribe(boolean binary) {
+        }
+
+        @Override
+        public void unsubscribe(boolean binary) {
+        }
+
+        @Override
+        public void switchToBinary() {
+        }
+    }
+
+    private final ByteSlice args = new ByteSlice();
+    private final WindowCommands server1 = new WindowCommands(
+            new WindowModel(400, 200, "Server1"), new ServerMetrics("Server1"));
+    private final WindowSession windowSession = new WindowSession();
+
+    private final MemorySession session = new MemorySession();
+    /** Кадр GET_SWAP без поля длины и без аргументов. */
+    private final byte[] getSwapFrame = {BinaryProtocol.GET_SWAP};
+
+    @Benchmark
+    public int server1(Server1Line l) {
+        windowSession.encoder.reset();
+        server1.handleLine(windowSession, l.bytes, 0, l.bytes.length - 1, args);
+        return windowSession.encoder.size();
+    }
+
+    @Benchmark
+    public int server2Text(Server2Line l) {
+        session.encoder.reset();
+        Server2.handleLine(l.bytes, 0, l.bytes.length - 1, session);
+        return session.encoder.size();
+    }
+
+    @Benchmark
+    public int server2Binary() {
+        session.encoder.reset();
+        Server2.handleFrame(getSwapFrame, 0, getSwapFrame.length, session);
+        return session.encoder.size();
+    }
+}
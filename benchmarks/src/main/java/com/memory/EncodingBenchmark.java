@@ -0,0 +1,59 @@
+package com.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Форматирование ответов: размеры, метки времени и строка /getswap целиком. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+    private static final byte[] SWAP_FREE = ResponseEncoder.utf8("SwapFree : ");
+    private static final byte[] MESSAGE = ResponseEncoder.utf8("Размер окна: ");
+
+    /** Размеры для разных веток форматирования: байты, МБ, ГБ. */
+    @State(Scope.Thread)
+    public static class Size {
+        @Param({"512", "1560281088", "2147479552"})
+        public long bytes;
+    }
+
+    private final ResponseEncoder enc = new ResponseEncoder();
+
+    @Benchmark
+    public int appendSize(Size size) {
+        enc.reset();
+        return enc.appendSize(size.bytes).size();
+    }
+
+    @Benchmark
+    public byte[] clockNow() {
+        return CachedClock.SYSTEM.now();
+    }
+
+    @Benchmark
+    public int timestampedLine() {
+        enc.reset();
+        return enc.line(MESSAGE).size();
+    }
+
+    @Benchmark
+    public int swapLine(Size size) {
+        enc.reset();
+        return enc.append(SWAP_FREE).appendSize(size.bytes).append(" (").time(System.currentTimeMillis())
+                .append(')').endLine().size();
+    }
+}
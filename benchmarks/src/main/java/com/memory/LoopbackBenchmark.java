@@ -0,0 +1,162 @@
+package com.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запрос-ответ через loopback: серверы запускаются в том же JVM, клиент
+ * держит одно соединение и ждёт ответ на каждую команду. Режимы Server2
+ * (thread | nio) и протоколы (text | binary) сравниваются параметрами;
+ * каждая комбинация идёт в отдельном форке, так как настройки серверов
+ * читаются при загрузке классов.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    static final int SERVER1_PORT = 15555;
+
+    @State(Scope.Benchmark)
+    public static class Server1Bench {
+        private WindowServer server;
+        private Socket socket;
+        private OutputStream out;
+        private InputStream in;
+        private final byte[] request = "/getwindow\n".getBytes(StandardCharsets.UTF_8);
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, InterruptedException {
+            System.setProperty("server1.port", String.valueOf(SERVER1_PORT));
+            server = new WindowServer(new WindowModel(400, 200, "Bench"));
+            if (!server.start()) throw new IllegalStateException("Server1 не запустился");
+            socket = connect(SERVER1_PORT);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream());
+            skipLines(in, 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            socket.close();
+            server.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Server2Bench {
+        @Param({"thread", "nio"})
+        public String mode;
+
+        @Param({"text", "binary"})
+        public String protocol;
+
+        private Socket socket;
+        private OutputStream out;
+        private InputStream in;
+        private byte[] request;
+        private boolean binary;
+        /** Ответ GET_SWAP: длина, команда, статус и три числа. */
+        private final byte[] frame = new byte[BinaryProtocol.LENGTH_BYTES + 2 + 3 * Long.BYTES];
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, InterruptedException {
+            System.setProperty("server2.mode", mode);
+            System.setProperty("server2.maxClients", "16");
+            Thread t = new Thread(() -> Server2.main(new String[0]), "Bench-Server2");
+            t.setDaemon(true);
+            t.start();
+            socket = connect(Server2.PORT);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream());
+            skipLines(in, 1);
+            binary = "binary".equals(protocol);
+            if (binary) {
+                out.write((BinaryProtocol.SWITCH_COMMAND + "\n").getBytes(StandardCharsets.UTF_8));
+                readFully(in, new byte[BinaryProtocol.LENGTH_BYTES + 2 + Long.BYTES]);
+                ByteArrayOutputStream b = new ByteArrayOutputStream();
+                DataOutputStream d = new DataOutputStream(b);
+                d.writeInt(1);
+                d.writeByte(BinaryProtocol.GET_SWAP);
+                request = b.toByteArray();
+            } else {
+                request = "/getswap\n".getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public void server1GetWindow(Server1Bench s) throws IOException {
+        s.out.write(s.request);
+        skipLines(s.in, 1);
+    }
+
+    @Benchmark
+    public void server2GetSwap(Server2Bench s) throws IOException {
+        s.out.write(s.request);
+        if (s.binary) {
+            readFully(s.in, s.frame);
+        } else {
+            skipLines(s.in, 3);
+        }
+    }
+
+    static Socket connect(int port) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                Socket s = new Socket("localhost", port);
+                s.setTcpNoDelay(true);
+                return s;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    static void skipLines(InputStream in, int lines) throws IOException {
+        while (lines > 0) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            if (b == '\n') lines--;
+        }
+    }
+
+    static void readFully(InputStream in, byte[] buf) throws IOException {
+        int off = 0;
+        while (off < buf.length) {
+            int n = in.read(buf, off, buf.length - off);
+            if (n < 0) throw new EOFException();
+            off += n;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/** Разбор /proc/meminfo: чтение фикстуры с диска и разбор всех полей за один вызов. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeminfoBenchmark {
+    private Path fixture;
+    private MeminfoParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = Files.createTempFile("meminfo", ".fixture");
+        try (InputStream in = MeminfoBenchmark.class.getResourceAsStream("/meminfo.fixture")) {
+            Files.copy(in, fixture, StandardCopyOption.REPLACE_EXISTING);
+        }
+        parser = new MeminfoParser(fixture);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        parser.close();
+        Files.deleteIfExists(fixture);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long[] v = parser.read();
+        return v[MeminfoParser.SWAP_TOTAL] + v[MeminfoParser.SWAP_FREE];
+    }
+}
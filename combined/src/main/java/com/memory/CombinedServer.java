@@ -0,0 +1,263 @@
+package com.memory;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Server1 и Server2 в одном процессе на общем {@link NioServer}: одни потоки
+ * ввода-вывода, один лимит клиентов и одни метрики на оба сервиса.
+ * <p>
+ * Слушает server1.port и server2.port — соединение сразу попадает в свой
+ * сервис, как у отдельных серверов, — и общий combined.port (0 выключает),
+ * где сервис выбирается командой /use window или /use swap. /use работает
+ * на любом порту, так что одному соединению доступны оба сервиса. В двоичном
+ * режиме кадры окна (коды {@link BinaryProtocol#GET_WINDOW}..{@link BinaryProtocol#RESIZE_EVENT})
+ * выполняет Server1, остальные — Server2, независимо от выбранного сервиса.
+ * <p>
+ * Настройки: combined.port, combined.maxClients, combined.ioThreads,
+ * combined.admissionQueue, combined.admissionWaitMs, combined.retryAfterSec,
+ * combined.idleTimeoutMs, combined.readTimeoutMs, combined.maxQueued; окно —
+ * server1.width, server1.height, server1.title; замеры swap — свойства server2.*.
+ */
+public final class CombinedServer {
+    private static final int PORT = Integer.getInteger("combined.port", 7000);
+    private static final int MAX_CLIENTS = Integer.getInteger("combined.maxClients", 64);
+    private static final int IO_THREADS = Integer.getInteger("combined.ioThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int ADMISSION_QUEUE = Integer.getInteger("combined.admissionQueue", 16);
+    private static final long ADMISSION_WAIT_MS = Long.getLong("combined.admissionWaitMs", 5000);
+    private static final int RETRY_AFTER_SEC = Integer.getInteger("combined.retryAfterSec", 5);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("combined.idleTimeoutMs", 300_000);
+    private static final long READ_TIMEOUT_MS = Long.getLong("combined.readTimeoutMs", 10_000);
+    /** Кадров в очереди записи соединения; кто отстал сильнее, отключается, как в {@link ResizeBroadcaster}. */
+    private static final int MAX_QUEUED = Integer.getInteger("combined.maxQueued", 64);
+
+    private static final byte[] GREETING = ResponseEncoder.utf8(
+            "Общий сервер. Выберите сервис: /use window или /use swap");
+    private static final byte[] OVERLOADED = ResponseEncoder.utf8(
+            "Сервер переполнен. Попробуйте через " + RETRY_AFTER_SEC + " с.\n");
+    private static final byte[] USE_USAGE = ResponseEncoder.utf8("Ошибка: используйте /use window или /use swap");
+    private static final byte[] NO_SERVICE = ResponseEncoder.utf8("Сервис не выбран: /use window или /use swap");
+    private static final byte[] USE = ResponseEncoder.utf8("/use");
+    private static final byte[] BINARY = ResponseEncoder.utf8(BinaryProtocol.SWITCH_COMMAND);
+
+    private enum Service { WINDOW, SWAP }
+
+    private static final ServerMetrics metrics = new ServerMetrics("Combined");
+    private static WindowCommands window;
+    /** Подписчики resize; рассылка идёт через очереди их соединений. */
+    private static final Set<Session> resizeLines = ConcurrentHashMap.newKeySet();
+    private static final Set<Session> resizeFrames = ConcurrentHashMap.newKeySet();
+
+    /** Сессия соединения; одна на оба сервиса, поэтому реализует оба интерфейса. */
+    private static final class Session implements Server2.Session, WindowCommands.Session {
+        private final NioServer.Connection c;
+        private final ByteSlice args = new ByteSlice();
+        private Service service;
+
+        Session(NioServer.Connection c, Service service) {
+            this.c = c;
+            this.service = service;
+        }
+
+        @Override
+        public ResponseEncoder encoder() {
+            return c.encoder();
+        }
+
+        @Override
+        public ByteSlice args() {
+            return args;
+        }
+
+        @Override
+        public void push(byte[] frame) {
+            c.send(frame);
+        }
+
+        @Override
+        public <T> void replyWhenDone(CompletableFuture<T> work, Server2.Reply<T> reply) {
+            c.replyWhenDone(work, out -> Server2.writeReply(out, work, reply));
+        }
+
+        @Override
+        public void subscribe(boolean binary) {
+            (binary ? resizeFrames : resizeLines).add(this);
+        }
+
+        @Override
+        public void unsubscribe(boolean binary) {
+            (binary ? resizeFrames : resizeLines).remove(this);
+        }
+
+        @Override
+        public void switchToBinary() {
+            // текстовые рассылки обоих сервисов двоичный клиент не разберёт
+            resizeLines.remove(this);
+            Server2.stopWatching(this);
+            c.switchToBinary();
+        }
+
+        void close() {
+            resizeLines.remove(this);
+            resizeFrames.remove(this);
+            Server2.stopWatching(this);
+        }
+
+        boolean listening() {
+            return resizeLines.contains(this) || resizeFrames.contains(this) || Server2.isWatching(this);
+        }
+    }
+
+    private CombinedServer() { }
+
+    public static void main(String[] args) {
+        WindowModel model = new WindowModel(
+                Integer.getInteger("server1.width", 400),
+                Integer.getInteger("server1.height", 200),
+                System.getProperty("server1.title", "Server1"));
+        window = new WindowCommands(model, metrics);
+        model.onResize(CombinedServer::broadcastResize);
+        Server2.startEmbedded(metrics);
+        metrics.gauge("window.subscribers", () -> resizeLines.size() + resizeFrames.size());
+        metrics.registerMBean();
+
+        List<ServerSocketChannel> servers = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>(List.of(WindowServer.PORT, Server2.PORT));
+        if (PORT > 0) ports.add(PORT);
+        try {
+            for (int port : ports) {
+                ServerSocketChannel server = ServerSocketChannel.open();
+                servers.add(server);
+                server.bind(new InetSocketAddress(port));
+            }
+        } catch (IOException e) {
+            String reason = e instanceof BindException ? "порт " + ports.get(servers.size() - 1) + " уже занят" : e.getMessage();
+            System.err.println("Не удалось запустить общий сервер: " + reason);
+            System.exit(1);
+        }
+        System.out.println("Общий сервер (" + IO_THREADS + " IO-потоков, до " + MAX_CLIENTS
+                + " клиентов): окно на " + WindowServer.PORT + ", swap на " + Server2.PORT
+                + (PORT > 0 ? ", выбор сервиса на " + PORT : ""));
+
+        NioServer nio = new NioServer("Combined", new NioServer.Handler() {
+            @Override
+            public void onConnect(NioServer.Connection c) {
+                int port = c.localPort();
+                Service service = port == WindowServer.PORT ? Service.WINDOW
+                        : port == Server2.PORT ? Service.SWAP : null;
+                c.attach(new Session(c, service));
+                greet(c.encoder(), service);
+            }
+
+            @Override
+            public boolean onLine(NioServer.Connection c, byte[] buf, int off, int len) {
+                Session s = (Session) c.attachment();
+                if (isCommand(buf, off, len, USE, s.args)) return use(s);
+                if (s.service == null) {
+                    // кадры направляются по коду команды, так что сервис для них не нужен
+                    if (isCommand(buf, off, len, BINARY, s.args)) return Server2.handleLine(buf, off, len, s);
+                    s.encoder().append(NO_SERVICE).endLine();
+                    return true;
+                }
+                return s.service == Service.WINDOW
+                        ? window.handleLine(s, buf, off, len, s.args)
+                        : Server2.handleLine(buf, off, len, s);
+            }
+
+            @Override
+            public boolean onFrame(NioServer.Connection c, byte[] buf, int off, int len) {
+                Session s = (Session) c.attachment();
+                byte command = len > 0 ? buf[off] : 0;
+                return command >= BinaryProtocol.GET_WINDOW && command <= BinaryProtocol.RESIZE_EVENT
+                        ? window.handleFrame(s, buf, off, len, s.args)
+                        : Server2.handleFrame(buf, off, len, s);
+            }
+
+            @Override
+            public void onDisconnect(NioServer.Connection c) {
+                ((Session) c.attachment()).close();
+            }
+
+            @Override
+            public boolean keepIdle(NioServer.Connection c) {
+                return ((Session) c.attachment()).listening();
+            }
+        }, new Semaphore(MAX_CLIENTS), IO_THREADS, OVERLOADED, metrics)
+                .admission(ADMISSION_QUEUE, ADMISSION_WAIT_MS)
+                .timeouts(IDLE_TIMEOUT_MS, READ_TIMEOUT_MS)
+                .maxQueued(MAX_QUEUED)
+                .log(Server2.log);
+        try {
+            nio.serve(servers.toArray(new ServerSocketChannel[0]));
+        } catch (IOException e) {
+            System.err.println("Ошибка в основном цикле общего сервера: " + e.getMessage());
+        } finally {
+            nio.shutdown();
+            for (ServerSocketChannel server : servers) {
+                try { server.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /** Приветствие сервиса — то же, что у отдельного сервера, поэтому клиенты не замечают разницы. */
+    private static void greet(ResponseEncoder out, Service service) {
+        if (service == Service.WINDOW) {
+            out.line(WindowCommands.CONNECTED);
+        } else {
+            out.append(service == Service.SWAP ? Server2.GREETING : GREETING).endLine();
+        }
+    }
+
+    private static boolean use(Session s) {
+        if (s.args.equalsIgnoreCase("window")) {
+            s.service = Service.WINDOW;
+        } else if (s.args.equalsIgnoreCase("swap")) {
+            s.service = Service.SWAP;
+        } else {
+            s.encoder().append(USE_USAGE).endLine();
+            return true;
+        }
+        greet(s.encoder(), s.service);
+        return true;
+    }
+
+    /**
+     * Является ли строка командой name (ASCII в нижнем регистре); её аргумент
+     * без пробелов по краям кладётся в args.
+     */
+    private static boolean isCommand(byte[] buf, int off, int len, byte[] name, ByteSlice args) {
+        int end = off + len;
+        while (off < end && ByteSlice.isSpace(buf[off])) off++;
+        while (end > off && ByteSlice.isSpace(buf[end - 1])) end--;
+        if (end - off < name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            if (ByteSlice.lower(buf[off + i]) != name[i]) return false;
+        }
+        int p = off + name.length;
+        if (p < end && !ByteSlice.isSpace(buf[p])) return false;
+        while (p < end && ByteSlice.isSpace(buf[p])) p++;
+        args.set(buf, p, end - p);
+        return true;
+    }
+
+    private static void broadcastResize(WindowModel.State s) {
+        // кадр кодируется один раз и разделяется очередями всех подписчиков
+        if (!resizeLines.isEmpty()) {
+            byte[] line = WindowCommands.resizeLine(s);
+            for (Session session : resizeLines) session.push(line);
+        }
+        if (!resizeFrames.isEmpty()) {
+            byte[] frame = WindowCommands.resizeFrame(s);
+            for (Session session : resizeFrames) session.push(frame);
+        }
+    }
+}
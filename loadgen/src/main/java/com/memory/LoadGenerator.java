@@ -0,0 +1,186 @@
+package com.memory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Консольный генератор нагрузки для Server1 и Server2 по строковому протоколу.
+ * <p>
+ * Запросы идут по открытой модели: с заданной общей скоростью, независимо от
+ * того, успевает ли сервер. Задержка считается от запланированного момента
+ * отправки, а не от фактического, поэтому время ожидания свободного
+ * соединения тоже попадает в перцентили (поправка на coordinated omission).
+ * <p>
+ * Настройки — системные свойства:
+ * <ul>
+ *   <li>loadgen.mix — смесь через запятую: {@code порт=команда*вес[#строк ответа]},
+ *       например {@code 6666=/getswap*3,5555=/getwindow*1}. Для /subscribe и
+ *       /watchswap вес — число отдельных соединений-подписчиков, их события
+ *       только считаются. Команды с ответом переменной длины (/history,
+ *       /topswap, /stats, /help) в смесь не допускаются: конец такого ответа
+ *       по строкам не определить;</li>
+ *   <li>loadgen.host, loadgen.connections (соединения для запросов),
+ *       loadgen.rate (запросов в секунду всего), loadgen.threads (потоков NIO),
+ *       loadgen.durationSec, loadgen.warmupSec.</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+    private static final String HOST = System.getProperty("loadgen.host", "localhost");
+    private static final String MIX = System.getProperty("loadgen.mix", "6666=/getswap*1");
+    private static final int CONNECTIONS = Integer.getInteger("loadgen.connections", 10);
+    private static final int RATE = Integer.getInteger("loadgen.rate", 1000);
+    private static final int THREADS = Integer.getInteger("loadgen.threads", 1);
+    private static final long DURATION_SEC = Long.getLong("loadgen.durationSec", 10);
+    private static final long WARMUP_SEC = Long.getLong("loadgen.warmupSec", 2);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final List<String> VARIABLE_REPLY = List.of("/history", "/topswap", "/stats", "/help");
+
+    /**
+     * Элемент смеси.
+     * @param weight     доля запросов; для подписок — число соединений
+     * @param replyLines сколько строк составляют ответ на запрос
+     */
+    record MixEntry(InetSocketAddress endpoint, String command, double weight, int replyLines,
+                    boolean subscription) {
+        String label() {
+            return command + " @" + endpoint.getPort();
+        }
+    }
+
+    /** Общие счётчики всех потоков нагрузки. */
+    static final class Stats {
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram[] perEntry;
+        final LongAdder[] sentPerEntry;
+        final LongAdder[] errorsPerEntry;
+        final LongAdder connected = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder connectFailed = new LongAdder();
+        final LongAdder closed = new LongAdder();
+        final LongAdder backlogDropped = new LongAdder();
+        final LongAdder unfinished = new LongAdder();
+        final LongAdder events = new LongAdder();
+
+        Stats(int entries) {
+            perEntry = new LatencyHistogram[entries];
+            sentPerEntry = new LongAdder[entries];
+            errorsPerEntry = new LongAdder[entries];
+            for (int i = 0; i < entries; i++) {
+                perEntry[i] = new LatencyHistogram();
+                sentPerEntry[i] = new LongAdder();
+                errorsPerEntry[i] = new LongAdder();
+            }
+        }
+    }
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<MixEntry> mix;
+        try {
+            mix = parseMix(MIX, HOST);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Неверная смесь loadgen.mix: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        int threads = Math.max(1, THREADS);
+        Stats stats = new Stats(mix.size());
+        System.out.printf(Locale.ROOT, "Нагрузка: %d запр/с, %d соединений, потоков %d, %d с (+%d с прогрев)%n",
+                RATE, CONNECTIONS, threads, DURATION_SEC, WARMUP_SEC);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            // скорость и соединения делятся между потоками поровну
+            int conns = CONNECTIONS / threads + (i < CONNECTIONS % threads ? 1 : 0);
+            LoadLoop loop = new LoadLoop(mix, stats, conns, (double) RATE / threads,
+                    WARMUP_SEC * 1_000_000_000L, DURATION_SEC * 1_000_000_000L, i == 0);
+            Thread t = new Thread(loop, "LoadGen-" + i);
+            t.start();
+            workers.add(t);
+        }
+        long started = System.nanoTime();
+        while (workers.stream().anyMatch(Thread::isAlive)) {
+            workers.get(0).join(1000);
+            long done = stats.total.count();
+            System.out.printf(Locale.ROOT, "  %3d с: выполнено в замере %d, p99 %.3f мс%n",
+                    (System.nanoTime() - started) / 1_000_000_000L, done, stats.total.percentile(99) / 1000.0);
+        }
+        report(mix, stats);
+    }
+
+    static List<MixEntry> parseMix(String spec, String host) {
+        List<MixEntry> mix = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String p = part.trim();
+            if (p.isEmpty()) continue;
+            int eq = p.indexOf('=');
+            int star = p.lastIndexOf('*');
+            if (eq <= 0 || star < eq) throw new IllegalArgumentException("ожидается порт=команда*вес: " + p);
+            int port = Integer.parseInt(p.substring(0, eq).trim());
+            String command = p.substring(eq + 1, star).trim();
+            String weightSpec = p.substring(star + 1).trim();
+            int lines = command.toLowerCase(Locale.ROOT).startsWith("/getswap") ? 3 : 1;
+            int hash = weightSpec.indexOf('#');
+            if (hash >= 0) {
+                lines = Integer.parseInt(weightSpec.substring(hash + 1).trim());
+                weightSpec = weightSpec.substring(0, hash).trim();
+            }
+            double weight = Double.parseDouble(weightSpec);
+            if (!command.startsWith("/") || weight < 0 || lines < 1) {
+                throw new IllegalArgumentException("неверный элемент: " + p);
+            }
+            String lower = command.toLowerCase(Locale.ROOT);
+            String name = lower.split("\\s+", 2)[0];
+            if (VARIABLE_REPLY.contains(name)) {
+                throw new IllegalArgumentException("ответ переменной длины, счёт строк невозможен: " + p);
+            }
+            boolean subscription = lower.startsWith("/subscribe") || lower.startsWith("/watchswap");
+            mix.add(new MixEntry(new InetSocketAddress(host, port), command, weight, lines, subscription));
+        }
+        if (mix.stream().noneMatch(e -> !e.subscription() && e.weight() > 0)) {
+            throw new IllegalArgumentException("нет ни одной команды-запроса с положительным весом");
+        }
+        return mix;
+    }
+
+    private static void report(List<MixEntry> mix, Stats s) {
+        System.out.println();
+        System.out.printf("Соединения: установлено %d, отказов (сервер переполнен) %d, ошибок подключения %d, "
+                        + "закрыто сервером %d%n",
+                s.connected.sum(), s.rejected.sum(), s.connectFailed.sum(), s.closed.sum());
+        System.out.printf("%-28s %10s %10s %7s", "Команда", "отправлено", "выполнено", "ошибок");
+        for (double p : PERCENTILES) System.out.printf(Locale.ROOT, " %9s", "p" + trim(p));
+        System.out.printf(" %9s  (мс)%n", "max");
+        long sent = 0, errors = 0;
+        for (int i = 0; i < mix.size(); i++) {
+            if (mix.get(i).subscription()) continue;
+            row(mix.get(i).label(), s.sentPerEntry[i].sum(), s.errorsPerEntry[i].sum(), s.perEntry[i]);
+            sent += s.sentPerEntry[i].sum();
+            errors += s.errorsPerEntry[i].sum();
+        }
+        row("Итого", sent, errors, s.total);
+        System.out.printf(Locale.ROOT, "Фактическая скорость в замере: %.1f запр/с (цель %d)%n",
+                (double) s.total.count() / Math.max(1, DURATION_SEC), RATE);
+        System.out.printf("Не отправлено из-за переполнения очереди: %d, без ответа к концу: %d%n",
+                s.backlogDropped.sum(), s.unfinished.sum());
+        if (mix.stream().anyMatch(MixEntry::subscription)) {
+            System.out.printf("Событий подписок получено: %d%n", s.events.sum());
+        }
+    }
+
+    private static void row(String label, long sent, long errors, LatencyHistogram h) {
+        System.out.printf("%-28s %10d %10d %7d", label, sent, h.count(), errors);
+        for (double p : PERCENTILES) System.out.printf(Locale.ROOT, " %9.3f", h.percentile(p) / 1000.0);
+        System.out.printf(Locale.ROOT, " %9.3f%n", h.max() / 1000.0);
+    }
+
+    private static String trim(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+    }
+}
@@ -0,0 +1,372 @@
+package com.memory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Один поток нагрузки: все его соединения обслуживаются одним Selector'ом.
+ * На каждом соединении не больше одного запроса в полёте; запросы, для
+ * которых в момент по расписанию нет свободного соединения, ждут в очереди
+ * своего сервера вместе с запланированным временем.
+ */
+final class LoadLoop implements Runnable {
+    private static final byte[] OVERLOADED = "переполнен".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_BACKLOG = 1_000_000;
+    private static final long CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private enum Phase { GREETING, IDLE, BUSY, SUBSCRIBING, SUBSCRIBED, CLOSED }
+
+    private record Pending(long intendedNanos, int entry) {
+    }
+
+    /** Сервер: свободные соединения и запросы, ждущие соединения. */
+    private static final class Endpoint {
+        final ArrayDeque<Conn> idle = new ArrayDeque<>();
+        final ArrayDeque<Pending> backlog = new ArrayDeque<>();
+    }
+
+    private static final class Conn {
+        final SocketChannel channel;
+        final Endpoint endpoint;
+        final int subscription;     // элемент смеси для соединения-подписчика, иначе -1
+        final ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+        ByteBuffer out;
+        SelectionKey key;
+        Phase phase = Phase.GREETING;
+        int entry;
+        int linesLeft;
+        long intendedNanos;
+
+        Conn(SocketChannel channel, Endpoint endpoint, int subscription) {
+            this.channel = channel;
+            this.endpoint = endpoint;
+            this.subscription = subscription;
+        }
+    }
+
+    private final List<LoadGenerator.MixEntry> mix;
+    private final LoadGenerator.Stats stats;
+    private final int connections;
+    private final long periodNanos;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final boolean openSubscriptions;
+    private final byte[][] requests;
+    private final double[] cumulative;
+    private final Endpoint[] entryEndpoint;
+    private final Map<InetSocketAddress, Endpoint> endpoints = new LinkedHashMap<>();
+    private Selector selector;
+    private int unresolved;
+    private long measureFrom = Long.MAX_VALUE;
+
+    /**
+     * @param openSubscriptions открывать ли соединения-подписчики (делает один поток)
+     */
+    LoadLoop(List<LoadGenerator.MixEntry> mix, LoadGenerator.Stats stats, int connections, double rate,
+             long warmupNanos, long durationNanos, boolean openSubscriptions) {
+        this.mix = mix;
+        this.stats = stats;
+        this.connections = connections;
+        this.periodNanos = Math.max(1, (long) (1_000_000_000L / Math.max(rate, 0.001)));
+        this.warmupNanos = warmupNanos;
+        this.durationNanos = durationNanos;
+        this.openSubscriptions = openSubscriptions;
+        this.requests = new byte[mix.size()][];
+        this.cumulative = new double[mix.size()];
+        this.entryEndpoint = new Endpoint[mix.size()];
+        double sum = 0;
+        for (int i = 0; i < mix.size(); i++) {
+            LoadGenerator.MixEntry e = mix.get(i);
+            requests[i] = (e.command() + "\n").getBytes(StandardCharsets.UTF_8);
+            entryEndpoint[i] = endpoints.computeIfAbsent(e.endpoint(), a -> new Endpoint());
+            if (!e.subscription()) sum += e.weight();
+            cumulative[i] = sum;
+        }
+    }
+
+    @Override
+    public void run() {
+        try (Selector sel = Selector.open()) {
+            selector = sel;
+            openConnections();
+            awaitGreetings();
+            generate();
+        } catch (IOException e) {
+            System.err.println("Ошибка потока нагрузки: " + e.getMessage());
+        }
+    }
+
+    /** Соединения для запросов делятся между серверами пропорционально весам. */
+    private void openConnections() {
+        Map<InetSocketAddress, Double> weights = new LinkedHashMap<>();
+        double total = 0;
+        for (LoadGenerator.MixEntry e : mix) {
+            if (e.subscription() || e.weight() <= 0) continue;
+            weights.merge(e.endpoint(), e.weight(), Double::sum);
+            total += e.weight();
+        }
+        int left = connections;
+        List<InetSocketAddress> addrs = new ArrayList<>(weights.keySet());
+        for (int i = 0; i < addrs.size(); i++) {
+            InetSocketAddress a = addrs.get(i);
+            int n = i == addrs.size() - 1 ? left : Math.max(1, (int) Math.round(connections * weights.get(a) / total));
+            n = Math.min(n, left);
+            left -= n;
+            for (int k = 0; k < n; k++) open(a, endpoints.get(a), -1);
+        }
+        if (!openSubscriptions) return;
+        for (int i = 0; i < mix.size(); i++) {
+            LoadGenerator.MixEntry e = mix.get(i);
+            if (!e.subscription()) continue;
+            for (int k = 0; k < (int) e.weight(); k++) open(e.endpoint(), entryEndpoint[i], i);
+        }
+    }
+
+    private void open(InetSocketAddress addr, Endpoint endpoint, int subscription) {
+        try {
+            SocketChannel ch = SocketChannel.open();
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Conn c = new Conn(ch, endpoint, subscription);
+            int ops = ch.connect(addr) ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+            c.key = ch.register(selector, ops, c);
+            unresolved++;
+        } catch (IOException e) {
+            stats.connectFailed.increment();
+        }
+    }
+
+    /** Ждём приветствия (или отказа) от всех соединений, прежде чем пускать нагрузку. */
+    private void awaitGreetings() throws IOException {
+        long deadline = System.nanoTime() + CONNECT_TIMEOUT_NANOS;
+        while (unresolved > 0 && System.nanoTime() < deadline) {
+            selector.select(100);
+            processKeys(System.nanoTime());
+        }
+    }
+
+    private void generate() throws IOException {
+        long start = System.nanoTime();
+        measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long next = start;
+        while (true) {
+            long now = System.nanoTime();
+            if (now < end) {
+                for (; next <= now && next < end; next += periodNanos) schedule(next);
+            } else if (outstanding() == 0 || now - end > DRAIN_TIMEOUT_NANOS) {
+                break;
+            }
+            long waitNanos = now < end ? next - now : TimeUnit.MILLISECONDS.toNanos(10);
+            if (waitNanos < 1_000_000) {
+                selector.selectNow();
+            } else {
+                selector.select(waitNanos / 1_000_000);
+            }
+            processKeys(System.nanoTime());
+        }
+        for (Endpoint e : endpoints.values()) {
+            for (Pending p : e.backlog) {
+                if (p.intendedNanos() >= measureFrom) stats.unfinished.increment();
+            }
+        }
+        for (SelectionKey k : selector.keys()) {
+            Conn c = (Conn) k.attachment();
+            if (c.phase == Phase.BUSY && c.intendedNanos >= measureFrom) stats.unfinished.increment();
+            try { c.channel.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private int outstanding() {
+        int n = 0;
+        for (Endpoint e : endpoints.values()) n += e.backlog.size();
+        for (SelectionKey k : selector.keys()) {
+            if (((Conn) k.attachment()).phase == Phase.BUSY) n++;
+        }
+        return n;
+    }
+
+    private void schedule(long intended) {
+        double r = ThreadLocalRandom.current().nextDouble() * cumulative[cumulative.length - 1];
+        int entry = 0;
+        while (cumulative[entry] <= r || mix.get(entry).subscription()) entry++;
+        Endpoint ep = entryEndpoint[entry];
+        Conn c = ep.idle.poll();
+        if (c != null) {
+            send(c, entry, intended);
+        } else if (ep.backlog.size() < MAX_BACKLOG) {
+            ep.backlog.add(new Pending(intended, entry));
+        } else {
+            stats.backlogDropped.increment();
+        }
+    }
+
+    private void send(Conn c, int entry, long intended) {
+        c.phase = Phase.BUSY;
+        c.entry = entry;
+        c.intendedNanos = intended;
+        c.linesLeft = mix.get(entry).replyLines();
+        if (intended >= measureFrom) stats.sentPerEntry[entry].increment();
+        write(c, requests[entry]);
+    }
+
+    private void write(Conn c, byte[] bytes) {
+        c.out = ByteBuffer.wrap(bytes);
+        flush(c);
+    }
+
+    private void flush(Conn c) {
+        try {
+            c.channel.write(c.out);
+            if (c.out.hasRemaining()) {
+                c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                c.out = null;
+                c.key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            close(c);
+        }
+    }
+
+    private void processKeys(long now) {
+        var it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey k = it.next();
+            it.remove();
+            Conn c = (Conn) k.attachment();
+            if (!k.isValid()) continue;
+            if (k.isConnectable()) {
+                try {
+                    c.channel.finishConnect();
+                    k.interestOps(SelectionKey.OP_READ);
+                } catch (IOException e) {
+                    stats.connectFailed.increment();
+                    unresolved--;
+                    c.phase = Phase.CLOSED;
+                    k.cancel();
+                    try { c.channel.close(); } catch (IOException ignored) {}
+                    continue;
+                }
+            }
+            if (k.isValid() && k.isWritable() && c.out != null) flush(c);
+            if (k.isValid() && k.isReadable()) read(c, now);
+        }
+    }
+
+    private void read(Conn c, long now) {
+        int n;
+        try {
+            n = c.channel.read(c.in);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            close(c);
+            return;
+        }
+        ByteBuffer in = c.in;
+        in.flip();
+        byte[] arr = in.array();
+        int start = in.position();
+        for (int i = start; i < in.limit() && c.phase != Phase.CLOSED; i++) {
+            if (arr[i] != '\n') continue;
+            onLine(c, arr, start, i - start, now);
+            start = i + 1;
+        }
+        in.position(start);
+        in.compact();
+        if (!in.hasRemaining()) in.clear();  // строка длиннее буфера: её содержимое не важно
+    }
+
+    private void onLine(Conn c, byte[] buf, int off, int len, long now) {
+        switch (c.phase) {
+            case GREETING -> {
+                unresolved--;
+                if (contains(buf, off, len, OVERLOADED)) {
+                    stats.rejected.increment();
+                    c.phase = Phase.CLOSED;
+                    c.key.cancel();
+                    try { c.channel.close(); } catch (IOException ignored) {}
+                    return;
+                }
+                stats.connected.increment();
+                if (c.subscription >= 0) {
+                    c.phase = Phase.SUBSCRIBING;
+                    write(c, requests[c.subscription]);
+                } else {
+                    becomeIdle(c);
+                }
+            }
+            case SUBSCRIBING -> c.phase = Phase.SUBSCRIBED;
+            case SUBSCRIBED -> stats.events.increment();
+            case BUSY -> {
+                if (--c.linesLeft > 0) return;
+                if (c.intendedNanos >= measureFrom) {
+                    long micros = (now - c.intendedNanos) / 1000;
+                    stats.perEntry[c.entry].record(micros);
+                    stats.total.record(micros);
+                }
+                becomeIdle(c);
+            }
+            default -> { }
+        }
+    }
+
+    private void becomeIdle(Conn c) {
+        Pending p = c.endpoint.backlog.poll();
+        if (p != null) {
+            send(c, p.entry(), p.intendedNanos());
+        } else {
+            c.phase = Phase.IDLE;
+            c.endpoint.idle.add(c);
+        }
+    }
+
+    private void close(Conn c) {
+        switch (c.phase) {
+            case GREETING -> {
+                // сервер закрыл соединение, не поздоровавшись: считаем отказом
+                unresolved--;
+                stats.rejected.increment();
+            }
+            case BUSY -> {
+                if (c.intendedNanos >= measureFrom) stats.errorsPerEntry[c.entry].increment();
+                stats.closed.increment();
+            }
+            case IDLE -> {
+                c.endpoint.idle.remove(c);
+                stats.closed.increment();
+            }
+            case CLOSED -> { }
+            default -> stats.closed.increment();
+        }
+        c.phase = Phase.CLOSED;
+        c.key.cancel();
+        try { c.channel.close(); } catch (IOException ignored) {}
+    }
+
+    private static boolean contains(byte[] buf, int off, int len, byte[] needle) {
+        outer:
+        for (int i = off; i <= off + len - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+package com.memory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Допуск клиентов при ограниченном числе мест. Если мест нет, новое
+ * соединение не отклоняется сразу, а ждёт в ограниченной очереди не дольше
+ * maxWaitMs: освободившееся место передаётся первому ожидающему прямо в
+ * {@link #release()}. Отказ получают только те, кому не хватило очереди
+ * или кто не дождался.
+ * <p>
+ * Все места должны возвращаться через {@link #release()}, а не напрямую в семафор.
+ *
+ * @param <T> ожидающее соединение (сокет или канал)
+ */
+public final class AdmissionQueue<T> {
+    /** Что сделать с соединением; вызывается вне блокировки очереди. */
+    public interface Gate<T> {
+        /** Место уже занято за клиентом. */
+        void admit(T client);
+
+        /** Очередь полна или время ожидания вышло. */
+        void reject(T client);
+    }
+
+    private record Waiter<T>(T client, long deadline) {
+    }
+
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+    private final Gate<T> gate;
+    private final ArrayDeque<Waiter<T>> waiters = new ArrayDeque<>();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param maxWaiting 0 — без очереди, отказ сразу, как раньше
+     */
+    public AdmissionQueue(String name, Semaphore permits, int maxWaiting, long maxWaitMs, Gate<T> gate) {
+        this.permits = permits;
+        this.maxWaiting = maxWaitMs > 0 ? Math.max(0, maxWaiting) : 0;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        this.gate = gate;
+        if (this.maxWaiting == 0) {
+            this.timer = null;
+            return;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-Admission");
+            t.setDaemon(true);
+            return t;
+        });
+        // очередь FIFO с одинаковым сроком, поэтому просроченные всегда в её начале
+        long period = Math.max(10, Math.min(100, maxWaitMs / 4));
+        timer.scheduleAtFixedRate(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Новое соединение: допуск, ожидание или отказ. */
+    public void offer(T client) {
+        boolean admitted;
+        synchronized (waiters) {
+            admitted = permits.tryAcquire();
+            if (!admitted && waiters.size() < maxWaiting) {
+                waiters.addLast(new Waiter<>(client, System.nanoTime() + maxWaitNanos));
+                return;
+            }
+        }
+        if (admitted) {
+            gate.admit(client);
+        } else {
+            gate.reject(client);
+        }
+    }
+
+    /** Возвращает место: отдаёт его первому ожидающему или семафору. */
+    public void release() {
+        Waiter<T> next;
+        synchronized (waiters) {
+            next = waiters.pollFirst();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+        }
+        // место переходит к ожидающему, не возвращаясь в семафор
+        gate.admit(next.client());
+    }
+
+    public int waiting() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+        while (true) {
+            Waiter<T> w;
+            synchronized (waiters) {
+                w = waiters.peekFirst();
+                if (w == null || now - w.deadline() < 0) return;
+                waiters.pollFirst();
+            }
+            try {
+                gate.reject(w.client());
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка отказа клиенту: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Останавливает таймер и отказывает всем ожидающим. */
+    public void shutdown() {
+        if (timer != null) timer.shutdownNow();
+        while (true) {
+            Waiter<T> w;
+            synchronized (waiters) {
+                w = waiters.pollFirst();
+            }
+            if (w == null) return;
+            gate.reject(w.client());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.memory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал, не тормозящий обработку команд: строки складываются в
+ * ограниченную очередь и печатаются отдельным потоком пачками. Не больше
+ * maxPerSecond строк в секунду; лишние отбрасываются, а их число выводится
+ * сводкой. Проверяйте {@link #enabled()} до того, как собирать строку,
+ * чтобы отброшенная строка вовсе не создавалась.
+ */
+public final class AsyncLog {
+    private final PrintStream out;
+    private final int maxPerSecond;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param maxPerSecond 0 — журнал выключен
+     */
+    public AsyncLog(String threadName, int maxPerSecond, int capacity) {
+        this(threadName, maxPerSecond, capacity, System.out);
+    }
+
+    public AsyncLog(String threadName, int maxPerSecond, int capacity, PrintStream out) {
+        this.out = out;
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        Thread t = new Thread(this::drainLoop, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Занимает место под строку в лимите текущей секунды. */
+    public boolean enabled() {
+        if (maxPerSecond == 0) return false;
+        long second = System.nanoTime() / 1_000_000_000L;
+        long w = window.get();
+        if (w != second && window.compareAndSet(w, second)) used.set(0);
+        if (used.incrementAndGet() <= maxPerSecond) return true;
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /** Ставит строку в очередь; при переполнении строка отбрасывается. */
+    public void log(String line) {
+        if (!queue.offer(line)) suppressed.incrementAndGet();
+    }
+
+    /** Строка с проверкой лимита, для мест, где она всё равно уже собрана. */
+    public void info(String line) {
+        if (enabled()) log(line);
+    }
+
+    public long suppressed() {
+        return suppressed.get();
+    }
+
+    private void drainLoop() {
+        List<String> batch = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        long reported = 0;
+        while (true) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            long dropped = suppressed.get();
+            if (batch.isEmpty() && dropped == reported) continue;
+            for (String s : batch) sb.append(s).append(System.lineSeparator());
+            if (dropped != reported) {
+                sb.append("... пропущено строк журнала: ").append(dropped - reported).append(System.lineSeparator());
+                reported = dropped;
+            }
+            out.print(sb);
+            out.flush();
+            sb.setLength(0);
+            batch.clear();
+        }
+    }
+}
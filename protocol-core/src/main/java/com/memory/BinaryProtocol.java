@@ -0,0 +1,69 @@
+package com.memory;
+
+/**
+ * Двоичный режим протокола для машинных клиентов.
+ * <p>
+ * Соединение начинается в текстовом режиме; команда {@value #SWITCH_COMMAND}
+ * переключает его на кадры, сервер подтверждает переключение кадром
+ * {@link #HELLO} с версией протокола. Дальше в обе стороны идут кадры:
+ * <pre>
+ * запрос: int длина | byte команда | long аргумент...
+ * ответ:  int длина | byte команда | byte статус | long значение...
+ * </pre>
+ * Длина считает байты после своего поля, числа — big-endian.
+ * Ответы приходят в порядке запросов, поэтому запросы можно слать пачкой.
+ */
+public final class BinaryProtocol {
+    public static final String SWITCH_COMMAND = "/binary";
+    public static final long VERSION = 1;
+    /** Размер поля длины кадра. */
+    public static final int LENGTH_BYTES = 4;
+
+    public static final byte OK = 0;
+    public static final byte BAD_ARGS = 1;
+    public static final byte UNKNOWN = 2;
+    public static final byte UNAVAILABLE = 3;
+
+    /** Подтверждение переключения: версия протокола. */
+    public static final byte HELLO = 0;
+    /** Закрыть соединение; без ответа. */
+    public static final byte EXIT = 127;
+
+    // Server1
+    /** → ширина, высота. */
+    public static final byte GET_WINDOW = 1;
+    /** ширина, высота → ширина, высота. */
+    public static final byte RESIZE = 2;
+    /** Подписка на {@link #RESIZE_EVENT}. */
+    public static final byte SUBSCRIBE = 3;
+    public static final byte UNSUBSCRIBE = 4;
+    /** Рассылка: ширина, высота. */
+    public static final byte RESIZE_EVENT = 5;
+
+    // Server2
+    /** [макс. давность, мс] → total, free, момент замера. */
+    public static final byte GET_SWAP = 16;
+    /** интервал, [порог] → фактический интервал; затем {@link #SWAP_EVENT}. */
+    public static final byte WATCH_SWAP = 17;
+    /** → 1, если подписка была. */
+    public static final byte UNWATCH = 18;
+    /** от, до, [шаг] → шаг, затем по шесть чисел на корзину (начало, n, min, max, avg, total). */
+    public static final byte HISTORY = 19;
+    /** Рассылка: total, free, момент замера. */
+    public static final byte SWAP_EVENT = 20;
+    /** [N] → просмотрено, мс, затем пары (pid, swap); пар не больше, чем хранит сервер (100). */
+    public static final byte TOP_SWAP = 21;
+
+    private BinaryProtocol() {
+    }
+
+    /** Ответ без данных, например статус ошибки. */
+    public static void status(ResponseEncoder out, byte command, byte status) {
+        out.beginFrame(command, status).endFrame();
+    }
+
+    /** Кадр подтверждения переключения в двоичный режим. */
+    public static void hello(ResponseEncoder out) {
+        out.beginFrame(HELLO, OK).putLong(VERSION).endFrame();
+    }
+}
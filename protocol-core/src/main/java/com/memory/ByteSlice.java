@@ -0,0 +1,151 @@
+package com.memory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Представление участка байтового массива без копирования: аргументы
+ * команды прямо во входном буфере. Содержит курсор для последовательного
+ * разбора аргументов: текстовых через {@link #hasNext()} и {@link #nextLong()},
+ * двоичных через {@link #remaining()} и {@link #readLong()}.
+ * Как CharSequence байты видны по одному символу (ASCII); для текста в
+ * UTF-8 используйте {@link #toString()}. Действителен только до следующего
+ * чтения во входной буфер.
+ */
+public final class ByteSlice implements CharSequence {
+    private byte[] array;
+    private int offset;
+    private int length;
+    private int cursor;
+
+    public ByteSlice() {
+        this(new byte[0], 0, 0);
+    }
+
+    public ByteSlice(byte[] array, int offset, int length) {
+        set(array, offset, length);
+    }
+
+    public ByteSlice set(byte[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        this.cursor = 0;
+        return this;
+    }
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public byte byteAt(int i) {
+        return array[offset + i];
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (array[offset + index] & 0xFF);
+    }
+
+    @Override
+    public ByteSlice subSequence(int start, int end) {
+        return new ByteSlice(array, offset + start, end - start);
+    }
+
+    /** Есть ли ещё аргументы после курсора. */
+    public boolean hasNext() {
+        skipSpaces();
+        return cursor < length;
+    }
+
+    /**
+     * Следующий аргумент как десятичное число во всём диапазоне long.
+     * Как в Long.parseLong, значение копится отрицательным, чтобы поместился Long.MIN_VALUE.
+     */
+    public long nextLong() {
+        skipSpaces();
+        int p = offset + cursor;
+        int end = offset + length;
+        boolean negative = p < end && array[p] == '-';
+        if (negative) p++;
+        int digitsStart = p;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multMin = limit / 10;
+        long v = 0;
+        while (p < end && !isSpace(array[p])) {
+            byte c = array[p];
+            if (c < '0' || c > '9') throw new NumberFormatException("Не число: " + this);
+            int digit = c - '0';
+            if (v < multMin || v * 10 < limit + digit) {
+                throw new NumberFormatException("Слишком большое число: " + this);
+            }
+            v = v * 10 - digit;
+            p++;
+        }
+        if (p == digitsStart) throw new NumberFormatException("Пустой аргумент");
+        cursor = p - offset;
+        return negative ? v : -v;
+    }
+
+    /** Следующий аргумент как int. */
+    public int nextInt() {
+        long v = nextLong();
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new NumberFormatException("Слишком большое число");
+        return (int) v;
+    }
+
+    /** Сколько байт осталось после курсора. */
+    public int remaining() {
+        return length - cursor;
+    }
+
+    /** Следующее число двоичного кадра: восемь байт big-endian. */
+    public long readLong() {
+        if (length - cursor < Long.BYTES) throw new IllegalArgumentException("Кадр короче ожидаемого");
+        int p = offset + cursor;
+        long v = 0;
+        for (int i = 0; i < Long.BYTES; i++) v = (v << 8) | (array[p + i] & 0xFF);
+        cursor += Long.BYTES;
+        return v;
+    }
+
+    /** Совпадает ли содержимое с ASCII-строкой без учёта регистра. */
+    public boolean equalsIgnoreCase(String ascii) {
+        if (ascii.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (lower(array[offset + i]) != lower((byte) ascii.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /** Текст в UTF-8 (создаёт строку). */
+    @Override
+    public String toString() {
+        return new String(array, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private void skipSpaces() {
+        while (cursor < length && isSpace(array[offset + cursor])) cursor++;
+    }
+
+    static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || b == 0x0B;
+    }
+
+    static int lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + 32 : b;
+    }
+}
@@ -0,0 +1,51 @@
+package com.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Часы с кэшем отформатированной секунды. Метка "uuuu-MM-dd HH:mm:ss"
+ * рендерится в байты один раз в секунду, все остальные вызовы в пределах
+ * той же секунды отдают готовый массив.
+ */
+public final class CachedClock {
+    /** Общие часы в системном часовом поясе. */
+    public static final CachedClock SYSTEM = new CachedClock(ZoneId.systemDefault());
+
+    /** Длина метки в байтах. */
+    public static final int LENGTH = 19;
+
+    private static final DateTimeFormatter FMT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+
+    private record Rendered(long second, byte[] bytes) { }
+
+    private final ZoneId zone;
+    private volatile Rendered last = new Rendered(Long.MIN_VALUE, null);
+
+    public CachedClock(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /** Метка текущей секунды. Возвращаемый массив менять нельзя. */
+    public byte[] now() {
+        return second(System.currentTimeMillis() / 1000);
+    }
+
+    /** Метка заданной секунды эпохи. Возвращаемый массив менять нельзя. */
+    public byte[] second(long epochSecond) {
+        Rendered r = last;
+        if (r.second == epochSecond) return r.bytes;
+        byte[] b = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zone)
+                .format(FMT).getBytes(StandardCharsets.US_ASCII);
+        last = new Rendered(epochSecond, b);
+        return b;
+    }
+
+    /** Метка текущей секунды строкой (для мест, где нужен String). */
+    public String nowString() {
+        return new String(now(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,172 @@
+package com.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Реестр команд строкового протокола с разбором прямо по байтам.
+ * <p>
+ * Имя команды (до первого пробела) хэшируется с приведением ASCII к нижнему
+ * регистру и ищется в открытой хэш-таблице, поэтому ни String, ни split,
+ * ни toLowerCase не создаются, а время поиска не растёт с числом команд.
+ * Обработчик получает аргументы как {@link ByteSlice} поверх входного буфера.
+ * Регистрация выполняется при старте; dispatch потокобезопасен. С
+ * {@link #metrics(ServerMetrics)} каждая команда учитывается в метриках сервера.
+ *
+ * @param <S> тип сессии, передаваемой обработчикам
+ */
+public final class CommandRegistry<S> {
+
+    /** Обработчик команды. */
+    @FunctionalInterface
+    public interface Handler<S> {
+        /**
+         * @param args аргументы после имени команды, без ведущих и хвостовых пробелов
+         * @return false, если после ответа соединение нужно закрыть
+         */
+        boolean handle(S session, ByteSlice args);
+    }
+
+    /** Зарегистрированная команда; stats появляется после {@link #metrics(ServerMetrics)}. */
+    private static final class Entry<S> {
+        final String name;
+        final Handler<S> handler;
+        ServerMetrics.CommandStats stats;
+
+        Entry(String name, Handler<S> handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+    }
+
+    private byte[][] keys = new byte[16][];
+    private Object[] entries = new Object[16];
+    private int size;
+    private Entry<S> unknown = new Entry<>("unknown", (s, name) -> true);
+    private ServerMetrics metrics;
+
+    /** Регистрирует команду; имя сравнивается без учёта регистра. */
+    public CommandRegistry<S> register(String name, Handler<S> handler) {
+        byte[] key = name.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        if (find(key, 0, key.length) >= 0) {
+            throw new IllegalArgumentException("Команда уже зарегистрирована: " + name);
+        }
+        if ((size + 1) * 4 > keys.length) rehash(keys.length * 2);
+        Entry<S> e = new Entry<>(name.toLowerCase(), handler);
+        if (metrics != null) e.stats = metrics.command(e.name);
+        insert(key, e);
+        size++;
+        return this;
+    }
+
+    /** Обработчик неизвестных команд; в args приходит имя команды. */
+    public CommandRegistry<S> unknown(Handler<S> handler) {
+        this.unknown = new Entry<>("unknown", handler);
+        if (metrics != null) unknown.stats = metrics.command(unknown.name);
+        return this;
+    }
+
+    /** Включает учёт числа вызовов и времени выполнения каждой команды. */
+    public CommandRegistry<S> metrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+        for (Object o : entries) {
+            if (o != null) {
+                @SuppressWarnings("unchecked")
+                Entry<S> e = (Entry<S>) o;
+                e.stats = metrics.command(e.name);
+            }
+        }
+        unknown.stats = metrics.command(unknown.name);
+        return this;
+    }
+
+    public boolean contains(String name) {
+        byte[] key = name.getBytes(StandardCharsets.US_ASCII);
+        return find(key, 0, key.length) >= 0;
+    }
+
+    /**
+     * Разбирает и выполняет одну строку.
+     * @param args переиспользуемый срез для аргументов (обычно поле сессии)
+     * @return результат обработчика: false — закрыть соединение
+     */
+    public boolean dispatch(S session, byte[] buf, int off, int len, ByteSlice args) {
+        int end = off + len;
+        while (off < end && ByteSlice.isSpace(buf[off])) off++;
+        while (end > off && ByteSlice.isSpace(buf[end - 1])) end--;
+        int p = off;
+        while (p < end && !ByteSlice.isSpace(buf[p])) p++;
+
+        int slot = find(buf, off, p - off);
+        if (slot < 0) {
+            return invoke(unknown, session, args.set(buf, off, p - off));
+        }
+        while (p < end && ByteSlice.isSpace(buf[p])) p++;
+        @SuppressWarnings("unchecked")
+        Entry<S> e = (Entry<S>) entries[slot];
+        return invoke(e, session, args.set(buf, p, end - p));
+    }
+
+    private static <S> boolean invoke(Entry<S> e, S session, ByteSlice args) {
+        ServerMetrics.CommandStats stats = e.stats;
+        if (stats == null) return e.handler.handle(session, args);
+        long started = System.nanoTime();
+        try {
+            return e.handler.handle(session, args);
+        } finally {
+            stats.record(System.nanoTime() - started);
+        }
+    }
+
+    private int find(byte[] b, int off, int len) {
+        byte[][] ks = keys;
+        int mask = ks.length - 1;
+        int slot = hash(b, off, len) & mask;
+        while (true) {
+            byte[] k = ks[slot];
+            if (k == null) return -1;
+            if (k.length == len && matches(k, b, off)) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean matches(byte[] key, byte[] b, int off) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != ByteSlice.lower(b[off + i])) return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) h = 31 * h + ByteSlice.lower(b[off + i]);
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(byte[] key, Object entry) {
+        int mask = keys.length - 1;
+        int slot = hash(key, 0, key.length) & mask;
+        while (keys[slot] != null) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        entries[slot] = entry;
+    }
+
+    private void rehash(int capacity) {
+        byte[][] oldKeys = keys;
+        Object[] oldEntries = entries;
+        keys = new byte[capacity][];
+        entries = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) insert(oldKeys[i], oldEntries[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CommandRegistry" + Arrays.stream(keys)
+                .filter(k -> k != null)
+                .map(k -> new String(k, StandardCharsets.US_ASCII))
+                .sorted()
+                .toList();
+    }
+}
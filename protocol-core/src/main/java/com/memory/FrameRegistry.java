@@ -0,0 +1,64 @@
+package com.memory;
+
+/**
+ * Реестр команд двоичного режима ({@link BinaryProtocol}): обработчик
+ * выбирается по байту команды прямо из массива, аргументы читаются из
+ * {@link ByteSlice} через {@link ByteSlice#readLong()}.
+ *
+ * @param <S> тип сессии, передаваемой обработчикам
+ */
+public final class FrameRegistry<S> {
+    private final Object[] handlers = new Object[256];
+    private final String[] names = new String[256];
+    private final ServerMetrics.CommandStats[] stats = new ServerMetrics.CommandStats[256];
+    private CommandRegistry.Handler<S> unknown = (s, frame) -> true;
+    private ServerMetrics metrics;
+
+    /** @param name имя для метрик, например "bin:/getswap" */
+    public FrameRegistry<S> register(byte command, String name, CommandRegistry.Handler<S> handler) {
+        int id = command & 0xFF;
+        if (handlers[id] != null) {
+            throw new IllegalArgumentException("Команда уже зарегистрирована: " + command);
+        }
+        handlers[id] = handler;
+        names[id] = name;
+        if (metrics != null) stats[id] = metrics.command(name);
+        return this;
+    }
+
+    /** Обработчик неизвестных команд; в args приходит весь кадр, первый байт — команда. */
+    public FrameRegistry<S> unknown(CommandRegistry.Handler<S> handler) {
+        this.unknown = handler;
+        return this;
+    }
+
+    /** Включает учёт числа вызовов и времени выполнения каждой команды. */
+    public FrameRegistry<S> metrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null) stats[i] = metrics.command(names[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Выполняет один кадр без поля длины.
+     * @param args переиспользуемый срез для аргументов (обычно поле сессии)
+     * @return результат обработчика: false — закрыть соединение
+     */
+    public boolean dispatch(S session, byte[] buf, int off, int len, ByteSlice args) {
+        if (len < 1) return unknown.handle(session, args.set(buf, off, len));
+        int id = buf[off] & 0xFF;
+        @SuppressWarnings("unchecked")
+        CommandRegistry.Handler<S> h = (CommandRegistry.Handler<S>) handlers[id];
+        if (h == null) return unknown.handle(session, args.set(buf, off, len));
+        ServerMetrics.CommandStats s = stats[id];
+        if (s == null) return h.handle(session, args.set(buf, off + 1, len - 1));
+        long started = System.nanoTime();
+        try {
+            return h.handle(session, args.set(buf, off + 1, len - 1));
+        } finally {
+            s.record(System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма неотрицательных значений (обычно задержек в микросекундах)
+ * с логарифмическими корзинами: значения до 64 хранятся точно, дальше каждая
+ * степень двойки делится на 64 корзины, то есть погрешность не больше 1,6%.
+ * Запись без блокировок и выделения памяти, из любого числа потоков:
+ * счётчики на {@link LongAdder}, а максимум меняется CAS только при росте.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        raiseMax(value);
+    }
+
+    /** Обычно максимум уже больше, и тогда обходится одним чтением без записи. */
+    private void raiseMax(long value) {
+        long cur = max.get();
+        while (value > cur && !max.compareAndSet(cur, value)) cur = max.get();
+    }
+
+    /** Добавляет значения другой гистограммы, например при сведении потоков. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        raiseMax(other.max.get());
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Значение перцентиля: верхняя граница корзины, в которую попадает
+     * заданная доля записей, но не больше максимума.
+     * @param percentile от 0 до 100
+     */
+    public long percentile(double percentile) {
+        long n = total.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        return SUB + (exp - SUB_BITS) * SUB + (int) ((v >>> (exp - SUB_BITS)) - SUB);
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB) return index;
+        int shift = (index - SUB) / SUB;
+        long sub = SUB + (index - SUB) % SUB;
+        return ((sub + 1) << shift) - 1;
+    }
+}
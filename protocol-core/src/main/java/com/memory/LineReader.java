@@ -0,0 +1,132 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Чтение строк протокола из блокирующего потока без создания String.
+ * Строка доступна как участок внутреннего буфера до следующего вызова
+ * {@link #next()}; завершающие \r\n отбрасываются. После переключения
+ * в двоичный режим тем же буфером читаются кадры через {@link #nextFrame()}.
+ */
+public final class LineReader {
+    private final InputStream in;
+    private final int maxLine;
+    private final ServerMetrics metrics;
+    private byte[] buf = new byte[1024];
+    private int start;      // начало текущей строки
+    private int lineEnd;    // конец текущей строки без перевода строки
+    private int next;       // начало следующей (необработанной) строки
+    private int limit;      // конец прочитанных данных
+    private long lastReadAt = System.nanoTime();
+
+    public LineReader(InputStream in, int maxLine) {
+        this(in, maxLine, null);
+    }
+
+    /** @param metrics куда учитывать прочитанные байты; может быть null */
+    public LineReader(InputStream in, int maxLine, ServerMetrics metrics) {
+        this.in = in;
+        this.maxLine = maxLine;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Переходит к следующей строке, при необходимости блокируясь на чтении.
+     * @return false при конце потока
+     * @throws IOException в том числе если строка длиннее maxLine
+     */
+    public boolean next() throws IOException {
+        int scan = next;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    start = next;
+                    lineEnd = i > start && buf[i - 1] == '\r' ? i - 1 : i;
+                    next = i + 1;
+                    return true;
+                }
+            }
+            if (limit - next >= maxLine) throw new IOException("Слишком длинная строка");
+            scan = limit - next;
+            if (!fill()) return false;
+            scan += next;
+        }
+    }
+
+    /**
+     * Переходит к следующему кадру {@link BinaryProtocol}; текущий участок —
+     * кадр без поля длины.
+     * @return false при конце потока
+     * @throws IOException в том числе при длине кадра вне 1..maxLine
+     */
+    public boolean nextFrame() throws IOException {
+        while (limit - next < BinaryProtocol.LENGTH_BYTES) {
+            if (!fill()) return false;
+        }
+        int len = (buf[next] & 0xFF) << 24 | (buf[next + 1] & 0xFF) << 16
+                | (buf[next + 2] & 0xFF) << 8 | (buf[next + 3] & 0xFF);
+        if (len < 1 || len > maxLine) throw new IOException("Неверная длина кадра: " + len);
+        while (limit - next < BinaryProtocol.LENGTH_BYTES + len) {
+            if (!fill()) return false;
+        }
+        start = next + BinaryProtocol.LENGTH_BYTES;
+        lineEnd = start + len;
+        next = lineEnd;
+        return true;
+    }
+
+    /** Дочитывает данные, сдвигая необработанный хвост в начало буфера. */
+    private boolean fill() throws IOException {
+        if (next > 0 && limit == buf.length) {
+            System.arraycopy(buf, next, buf, 0, limit - next);
+            limit -= next;
+            next = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxLine + BinaryProtocol.LENGTH_BYTES + 1));
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) return false;
+        limit += n;
+        if (n > 0) lastReadAt = System.nanoTime();
+        if (metrics != null) metrics.bytesIn(n);
+        return true;
+    }
+
+    public byte[] array() {
+        return buf;
+    }
+
+    public int offset() {
+        return start;
+    }
+
+    public int length() {
+        return lineEnd - start;
+    }
+
+    /**
+     * Начата ли следующая строка или кадр: в буфере есть байты без завершения.
+     * После SocketTimeoutException чтение можно продолжить тем же объектом,
+     * а этот признак отличает зависший запрос от простоя.
+     */
+    public boolean hasPartial() {
+        return next < limit;
+    }
+
+    /** Момент (System.nanoTime) последнего чтения, вернувшего данные. */
+    public long lastReadNanos() {
+        return lastReadAt;
+    }
+
+    /**
+     * Есть ли уже пришедшие, но не разобранные байты — во внутреннем буфере
+     * или в потоке. Аналог {@link java.io.BufferedReader#ready()} для
+     * отправки ответов пачкой.
+     */
+    public boolean ready() throws IOException {
+        return next < limit || in.available() > 0;
+    }
+}
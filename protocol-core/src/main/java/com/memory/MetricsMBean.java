@@ -0,0 +1,90 @@
+package com.memory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Представление {@link ServerMetrics} в JMX. Набор атрибутов строится при
+ * каждом запросе описания, так как команды и очереди регистрируются после
+ * создания метрик. Все атрибуты — long только для чтения; задержки в микросекундах.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private final ServerMetrics metrics;
+
+    MetricsMBean(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongSupplier v = attributes().get(attribute);
+        if (v == null) throw new AttributeNotFoundException(attribute);
+        return v.getAsLong();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, LongSupplier> all = attributes();
+        AttributeList list = new AttributeList();
+        for (String n : names) {
+            LongSupplier v = all.get(n);
+            if (v != null) list.add(new Attribute(n, v.getAsLong()));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Атрибуты только для чтения: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        // операций нет; так JMX-клиенты получают обычную ошибку «нет метода»
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (String n : attributes().keySet()) {
+            infos.add(new MBeanAttributeInfo(n, "long", n, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Метрики " + metrics.name(),
+                infos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private Map<String, LongSupplier> attributes() {
+        Map<String, LongSupplier> a = new java.util.LinkedHashMap<>();
+        a.put("UptimeSeconds", metrics::uptimeSeconds);
+        a.put("Accepted", metrics::acceptedCount);
+        a.put("Rejected", metrics::rejectedCount);
+        a.put("BytesIn", metrics::bytesInCount);
+        a.put("BytesOut", metrics::bytesOutCount);
+        a.putAll(metrics.gauges());
+        for (Map.Entry<String, ServerMetrics.CommandStats> c : metrics.commands().entrySet()) {
+            String key = c.getKey().startsWith("/") ? c.getKey().substring(1) : c.getKey();
+            ServerMetrics.CommandStats s = c.getValue();
+            a.put(key + ".calls", s::calls);
+            a.put(key + ".p50Micros", () -> s.latency().percentile(50) / 1000);
+            a.put(key + ".p99Micros", () -> s.latency().percentile(99) / 1000);
+            a.put(key + ".maxMicros", () -> s.latency().max() / 1000);
+        }
+        return a;
+    }
+}
@@ -0,0 +1,269 @@
+package com.memory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Переиспользуемый буфер ответов строкового протокола.
+ * Строки пишутся сразу в UTF-8 без промежуточных String и byte[],
+ * статические ответы заранее кодируются через {@link #utf8(String)},
+ * метка времени берётся из {@link CachedClock}. Накопленная пачка строк
+ * отправляется одним вызовом {@link #writeTo(OutputStream)} или
+ * {@link #buffer()}. Кадры двоичного режима собираются через
+ * {@link #beginFrame(byte, byte)}. Экземпляр принадлежит одному потоку.
+ */
+public final class ResponseEncoder {
+    private static final long KB = 1024L;
+    private static final long MB = KB * 1024;
+    private static final long GB = MB * 1024;
+    private static final byte[] UNIT_GB = utf8(" GB");
+    private static final byte[] UNIT_MB = utf8(" MB");
+    private static final byte[] UNIT_KB = utf8(" KB");
+    private static final byte[] UNIT_B = utf8(" B");
+
+    private final CachedClock clock;
+    private byte[] buf;
+    private int len;
+    private ByteBuffer view;
+    private int frameStart = -1;
+
+    public ResponseEncoder() {
+        this(CachedClock.SYSTEM, 1024);
+    }
+
+    public ResponseEncoder(CachedClock clock, int initialCapacity) {
+        this.clock = clock;
+        this.buf = new byte[Math.max(64, initialCapacity)];
+    }
+
+    /** Кодирует статический ответ один раз, при загрузке класса. */
+    public static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Добавляет метку текущей секунды и пробел. */
+    public ResponseEncoder timestamp() {
+        ensure(CachedClock.LENGTH + 1);
+        byte[] ts = clock.now();
+        System.arraycopy(ts, 0, buf, len, ts.length);
+        len += ts.length;
+        buf[len++] = ' ';
+        return this;
+    }
+
+    /** Добавляет момент времени с миллисекундами: "uuuu-MM-dd HH:mm:ss.SSS". */
+    public ResponseEncoder time(long epochMillis) {
+        ensure(CachedClock.LENGTH + 4);
+        byte[] ts = clock.second(Math.floorDiv(epochMillis, 1000));
+        System.arraycopy(ts, 0, buf, len, ts.length);
+        len += ts.length;
+        int ms = (int) Math.floorMod(epochMillis, 1000);
+        buf[len++] = '.';
+        buf[len++] = (byte) ('0' + ms / 100);
+        buf[len++] = (byte) ('0' + ms / 10 % 10);
+        buf[len++] = (byte) ('0' + ms % 10);
+        return this;
+    }
+
+    public ResponseEncoder append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+        return this;
+    }
+
+    /** Копирует байты среза как есть, например эхо аргумента команды. */
+    public ResponseEncoder append(ByteSlice s) {
+        int n = s.length();
+        ensure(n);
+        System.arraycopy(s.array(), s.offset(), buf, len, n);
+        len += n;
+        return this;
+    }
+
+    public ResponseEncoder append(char c) {
+        if (c < 0x80) {
+            ensure(1);
+            buf[len++] = (byte) c;
+            return this;
+        }
+        return append(String.valueOf(c));
+    }
+
+    /** Добавляет текст в UTF-8 без выделения памяти. */
+    public ResponseEncoder append(CharSequence s) {
+        int n = s.length();
+        ensure(n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[len++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[len++] = (byte) (0xC0 | (c >> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[len++] = (byte) (0xF0 | (cp >> 18));
+                buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[len++] = '?';
+            } else {
+                buf[len++] = (byte) (0xE0 | (c >> 12));
+                buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    public ResponseEncoder append(long v) {
+        ensure(20);
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) return append(Long.toString(v));
+            buf[len++] = '-';
+            v = -v;
+        }
+        int start = len;
+        do {
+            buf[len++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    /** Размер в человекочитаемом виде с двумя знаками: "1.50 GB", "512 B". */
+    public ResponseEncoder appendSize(long bytes) {
+        long unit;
+        byte[] suffix;
+        if (bytes >= GB) {
+            unit = GB;
+            suffix = UNIT_GB;
+        } else if (bytes >= MB) {
+            unit = MB;
+            suffix = UNIT_MB;
+        } else if (bytes >= KB) {
+            unit = KB;
+            suffix = UNIT_KB;
+        } else {
+            return append(bytes).append(UNIT_B);
+        }
+        // сотые доли с округлением половины вверх, как у %.2f
+        long hundredths = (bytes / unit) * 100 + ((bytes % unit) * 100 + unit / 2) / unit;
+        append(hundredths / 100);
+        ensure(3);
+        buf[len++] = '.';
+        buf[len++] = (byte) ('0' + hundredths / 10 % 10);
+        buf[len++] = (byte) ('0' + hundredths % 10);
+        return append(suffix);
+    }
+
+    /** Завершает строку ответа. */
+    public ResponseEncoder endLine() {
+        ensure(1);
+        buf[len++] = '\n';
+        return this;
+    }
+
+    /** Готовая строка: метка времени, сообщение, перевод строки. */
+    public ResponseEncoder line(byte[] message) {
+        return timestamp().append(message).endLine();
+    }
+
+    /** Начинает кадр двоичного режима ({@link BinaryProtocol}); длина проставится в {@link #endFrame()}. */
+    public ResponseEncoder beginFrame(byte command, byte status) {
+        ensure(BinaryProtocol.LENGTH_BYTES + 2);
+        frameStart = len;
+        len += BinaryProtocol.LENGTH_BYTES;
+        buf[len++] = command;
+        buf[len++] = status;
+        return this;
+    }
+
+    /** Число в кадре: восемь байт big-endian. */
+    public ResponseEncoder putLong(long v) {
+        ensure(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) buf[len++] = (byte) (v >>> shift);
+        return this;
+    }
+
+    /** Перезаписывает ранее зарезервированное число по смещению из {@link #size()}. */
+    public ResponseEncoder putLong(int at, long v) {
+        if (at < 0 || at + Long.BYTES > len) throw new IndexOutOfBoundsException(at);
+        for (int i = 0; i < Long.BYTES; i++) buf[at + i] = (byte) (v >>> (56 - 8 * i));
+        return this;
+    }
+
+    public ResponseEncoder endFrame() {
+        if (frameStart < 0) throw new IllegalStateException("Кадр не начат");
+        int body = len - frameStart - BinaryProtocol.LENGTH_BYTES;
+        buf[frameStart] = (byte) (body >>> 24);
+        buf[frameStart + 1] = (byte) (body >>> 16);
+        buf[frameStart + 2] = (byte) (body >>> 8);
+        buf[frameStart + 3] = (byte) body;
+        frameStart = -1;
+        return this;
+    }
+
+    public int size() {
+        return len;
+    }
+
+    public boolean isEmpty() {
+        return len == 0;
+    }
+
+    public void reset() {
+        len = 0;
+        frameStart = -1;
+    }
+
+    /**
+     * Накопленные байты как ByteBuffer без копирования. Объект-представление
+     * переиспользуется и действителен до следующего изменения буфера.
+     */
+    public ByteBuffer buffer() {
+        if (view == null || view.array() != buf) view = ByteBuffer.wrap(buf);
+        view.clear().limit(len);
+        return view;
+    }
+
+    /** Копия накопленных байтов, например для рассылки одного кадра многим получателям. */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    /** Накопленный текст, например чтобы показать отформатированный размер в интерфейсе. */
+    @Override
+    public String toString() {
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Отправляет накопленную пачку одним вызовом write и очищает буфер.
+     * @return число отправленных байт
+     */
+    public int writeTo(OutputStream out) throws IOException {
+        int n = len;
+        if (n == 0) return 0;
+        out.write(buf, 0, n);
+        out.flush();
+        len = 0;
+        return n;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+    }
+}
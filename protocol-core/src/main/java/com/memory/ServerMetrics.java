@@ -0,0 +1,157 @@
+package com.memory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Счётчики сервера: подключения, трафик, задержки команд и глубины очередей.
+ * Запись — через LongAdder и {@link LatencyHistogram} без блокировок, поэтому
+ * её можно вызывать на горячем пути. Снимок выводится командой /stats
+ * ({@link #appendTo(ResponseEncoder)}) и публикуется в JMX ({@link #registerMBean()}).
+ */
+public final class ServerMetrics {
+    private static final byte[] UPTIME = ResponseEncoder.utf8(", работает ");
+    private static final byte[] SECONDS = ResponseEncoder.utf8(" с");
+    private static final byte[] CONNECTIONS = ResponseEncoder.utf8("Подключения: принято ");
+    private static final byte[] REJECTED = ResponseEncoder.utf8(", отклонено ");
+    private static final byte[] TRAFFIC = ResponseEncoder.utf8("Трафик: получено ");
+    private static final byte[] SENT = ResponseEncoder.utf8(", отправлено ");
+    private static final byte[] GAUGES = ResponseEncoder.utf8("Очереди:");
+    private static final byte[] MICROS = ResponseEncoder.utf8(" мкс");
+
+    /** Число вызовов и задержки одной команды, в наносекундах. */
+    public static final class CommandStats {
+        private final LongAdder calls = new LongAdder();
+        private final LatencyHistogram nanos = new LatencyHistogram();
+
+        public void record(long elapsedNanos) {
+            calls.increment();
+            nanos.record(elapsedNanos);
+        }
+
+        public long calls() {
+            return calls.sum();
+        }
+
+        public LatencyHistogram latency() {
+            return nanos;
+        }
+    }
+
+    private final String name;
+    private final long startedAt = System.currentTimeMillis();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Map<String, CommandStats> commands = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    public ServerMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void accepted() {
+        accepted.increment();
+    }
+
+    public void rejected() {
+        rejected.increment();
+    }
+
+    public void bytesIn(long n) {
+        bytesIn.add(n);
+    }
+
+    public void bytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    /** Статистика команды; создаётся при регистрации, затем только читается. */
+    public CommandStats command(String command) {
+        return commands.computeIfAbsent(command, c -> new CommandStats());
+    }
+
+    /** Мгновенное значение, вычисляемое при чтении: размер очереди, число подписчиков и т.п. */
+    public void gauge(String gauge, LongSupplier value) {
+        gauges.put(gauge, value);
+    }
+
+    public long acceptedCount() {
+        return accepted.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long bytesInCount() {
+        return bytesIn.sum();
+    }
+
+    public long bytesOutCount() {
+        return bytesOut.sum();
+    }
+
+    public long uptimeSeconds() {
+        return (System.currentTimeMillis() - startedAt) / 1000;
+    }
+
+    Map<String, CommandStats> commands() {
+        return commands;
+    }
+
+    Map<String, LongSupplier> gauges() {
+        return gauges;
+    }
+
+    /** Текстовый снимок для /stats; каждая строка завершается переводом строки. */
+    public void appendTo(ResponseEncoder out) {
+        out.append(name).append(UPTIME).append(uptimeSeconds()).append(SECONDS).endLine();
+        out.append(CONNECTIONS).append(acceptedCount()).append(REJECTED).append(rejectedCount()).endLine();
+        out.append(TRAFFIC).appendSize(bytesInCount()).append(SENT).appendSize(bytesOutCount()).endLine();
+        if (!gauges.isEmpty()) {
+            out.append(GAUGES);
+            for (Map.Entry<String, LongSupplier> g : gauges.entrySet()) {
+                out.append(' ').append(g.getKey()).append('=').append(g.getValue().getAsLong());
+            }
+            out.endLine();
+        }
+        for (Map.Entry<String, CommandStats> c : commands.entrySet()) {
+            CommandStats s = c.getValue();
+            if (s.calls() == 0) continue;
+            LatencyHistogram h = s.latency();
+            out.append(c.getKey()).append(": n=").append(s.calls());
+            appendMicros(out.append(" p50="), h.percentile(50));
+            appendMicros(out.append(" p99="), h.percentile(99));
+            appendMicros(out.append(" max="), h.max());
+            out.append(MICROS).endLine();
+        }
+    }
+
+    private static void appendMicros(ResponseEncoder out, long nanos) {
+        out.append(nanos / 1000).append('.').append((char) ('0' + nanos / 100 % 10));
+    }
+
+    /**
+     * Публикует счётчики как com.memory:type=Server,name=&lt;имя&gt;.
+     * Ошибка регистрации не мешает работе сервера.
+     */
+    public void registerMBean() {
+        try {
+            ObjectName on = new ObjectName("com.memory:type=Server,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), on);
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать MBean " + name + ": " + e.getMessage());
+        }
+    }
+}
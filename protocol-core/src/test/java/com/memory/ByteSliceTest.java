@@ -0,0 +1,94 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteSliceTest {
+
+    private static ByteSlice slice(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return new ByteSlice(b, 0, b.length);
+    }
+
+    @Test
+    void argumentsAreSplitBySpaces() {
+        ByteSlice args = slice("  640 \t-480  7");
+        assertEquals(640, args.nextInt());
+        assertEquals(-480, args.nextInt());
+        assertTrue(args.hasNext());
+        assertEquals(7, args.nextLong());
+        assertFalse(args.hasNext());
+    }
+
+    @Test
+    void sliceInsideLargerBuffer() {
+        byte[] b = "xx12 34yy".getBytes(StandardCharsets.US_ASCII);
+        ByteSlice args = new ByteSlice(b, 2, 5);
+        assertEquals(12, args.nextLong());
+        assertEquals(34, args.nextLong());
+        assertFalse(args.hasNext());
+    }
+
+    @Test
+    void wholeLongRange() {
+        assertEquals(Long.MAX_VALUE, slice("9223372036854775807").nextLong());
+        assertEquals(Long.MIN_VALUE, slice("-9223372036854775808").nextLong());
+        assertEquals(0, slice("-0").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("9223372036854775808").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("-9223372036854775809").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("99999999999999999999").nextLong());
+    }
+
+    @Test
+    void malformedNumbers() {
+        assertThrows(NumberFormatException.class, () -> slice("12a").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("-").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("   ").nextLong());
+        assertThrows(NumberFormatException.class, () -> slice("+5").nextLong());
+    }
+
+    @Test
+    void nextIntRejectsLongValues() {
+        assertEquals(Integer.MAX_VALUE, slice("2147483647").nextInt());
+        assertEquals(Integer.MIN_VALUE, slice("-2147483648").nextInt());
+        assertThrows(NumberFormatException.class, () -> slice("2147483648").nextInt());
+    }
+
+    @Test
+    void failedParseKeepsCursor() {
+        ByteSlice args = slice("abc 5");
+        assertThrows(NumberFormatException.class, args::nextLong);
+        assertThrows(NumberFormatException.class, args::nextLong);
+    }
+
+    @Test
+    void equalsIgnoreCaseAsciiOnly() {
+        assertTrue(slice("WINDOW").equalsIgnoreCase("window"));
+        assertTrue(slice("Swap").equalsIgnoreCase("sWAP"));
+        assertFalse(slice("swap ").equalsIgnoreCase("swap"));
+        assertFalse(slice("swa").equalsIgnoreCase("swap"));
+        assertFalse(slice("[").equalsIgnoreCase("{"));
+    }
+
+    @Test
+    void readLongIsBigEndian() {
+        byte[] b = {0, 0, 0, 0, 0, 0, 1, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 9};
+        ByteSlice frame = new ByteSlice(b, 0, b.length);
+        assertEquals(0x0102, frame.readLong());
+        assertEquals(-1, frame.readLong());
+        assertEquals(1, frame.remaining());
+        assertThrows(IllegalArgumentException.class, frame::readLong);
+    }
+
+    @Test
+    void toStringDecodesUtf8() {
+        assertEquals("Новое окно", slice("Новое окно").toString());
+    }
+}
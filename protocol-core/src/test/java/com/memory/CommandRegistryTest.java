@@ -0,0 +1,95 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandRegistryTest {
+
+    /** Журнал вызовов: "команда|аргументы". */
+    private final List<String> calls = new ArrayList<>();
+    private final ByteSlice args = new ByteSlice();
+
+    private CommandRegistry<List<String>> registry() {
+        return new CommandRegistry<List<String>>()
+                .register("/getswap", (log, a) -> log.add("getswap|" + a))
+                .register("/resize", (log, a) -> log.add("resize|" + a))
+                .register("/exit", (log, a) -> false)
+                .unknown((log, name) -> log.add("unknown|" + name));
+    }
+
+    private boolean dispatch(CommandRegistry<List<String>> r, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        return r.dispatch(calls, b, 0, b.length, args);
+    }
+
+    @Test
+    void nameIsCaseInsensitiveAndArgsAreTrimmed() {
+        CommandRegistry<List<String>> r = registry();
+        assertTrue(dispatch(r, "/GetSwap"));
+        assertTrue(dispatch(r, "  /RESIZE \t 640 480  \r"));
+        assertEquals(List.of("getswap|", "resize|640 480"), calls);
+    }
+
+    @Test
+    void unknownGetsCommandName() {
+        CommandRegistry<List<String>> r = registry();
+        dispatch(r, "/nope 1 2");
+        dispatch(r, "/getswapx");
+        dispatch(r, "");
+        assertEquals(List.of("unknown|/nope", "unknown|/getswapx", "unknown|"), calls);
+    }
+
+    @Test
+    void prefixOfCommandIsNotACommand() {
+        CommandRegistry<List<String>> r = registry();
+        dispatch(r, "/get");
+        assertEquals(List.of("unknown|/get"), calls);
+    }
+
+    @Test
+    void handlerResultIsReturned() {
+        assertFalse(dispatch(registry(), "/EXIT"));
+    }
+
+    @Test
+    void duplicateRegistrationIsRejected() {
+        CommandRegistry<List<String>> r = registry();
+        assertThrows(IllegalArgumentException.class, () -> r.register("/GETSWAP", (log, a) -> true));
+    }
+
+    @Test
+    void tableGrowsWithoutLosingCommands() {
+        CommandRegistry<List<String>> r = new CommandRegistry<>();
+        for (int i = 0; i < 200; i++) {
+            String name = "/cmd" + i;
+            r.register(name, (log, a) -> log.add(name));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertTrue(r.contains("/CMD" + i));
+            dispatch(r, "/Cmd" + i + " x");
+        }
+        assertEquals(200, calls.size());
+        assertEquals("/cmd199", calls.get(199));
+    }
+
+    @Test
+    void metricsCountCommandsRegisteredBeforeAndAfter() {
+        ServerMetrics metrics = new ServerMetrics("test");
+        CommandRegistry<List<String>> r = registry().metrics(metrics)
+                .register("/late", (log, a) -> true);
+        dispatch(r, "/getswap");
+        dispatch(r, "/late");
+        dispatch(r, "/nope");
+        assertEquals(1, metrics.commands().get("/getswap").calls());
+        assertEquals(1, metrics.commands().get("/late").calls());
+        assertEquals(1, metrics.commands().get("unknown").calls());
+    }
+}
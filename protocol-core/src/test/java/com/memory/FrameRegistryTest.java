@@ -0,0 +1,71 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameRegistryTest {
+    private final List<String> calls = new ArrayList<>();
+    private final ByteSlice args = new ByteSlice();
+
+    private final FrameRegistry<List<String>> registry = new FrameRegistry<List<String>>()
+            .register(BinaryProtocol.GET_SWAP, "bin:/getswap", (log, a) -> log.add("get|" + a.remaining()))
+            .register(BinaryProtocol.RESIZE, "bin:/resize", (log, a) -> log.add("resize|" + a.readLong() + "x" + a.readLong()))
+            .register(BinaryProtocol.EXIT, "bin:/exit", (log, a) -> false)
+            .unknown((log, frame) -> log.add("unknown|" + frame.length()));
+
+    /** Кадр без поля длины: команда и аргументы big-endian. */
+    private static byte[] frame(byte command, long... values) {
+        ResponseEncoder e = new ResponseEncoder();
+        e.append(new byte[] {command});
+        for (long v : values) e.putLong(v);
+        return e.toByteArray();
+    }
+
+    @Test
+    void handlerGetsArgumentsAfterCommandByte() {
+        byte[] f = frame(BinaryProtocol.RESIZE, 640, 480);
+        assertTrue(registry.dispatch(calls, f, 0, f.length, args));
+        f = frame(BinaryProtocol.GET_SWAP);
+        registry.dispatch(calls, f, 0, f.length, args);
+        assertEquals(List.of("resize|640x480", "get|0"), calls);
+    }
+
+    @Test
+    void frameInsideLargerBuffer() {
+        byte[] f = frame(BinaryProtocol.RESIZE, 1, 2);
+        byte[] buf = new byte[f.length + 6];
+        System.arraycopy(f, 0, buf, 3, f.length);
+        registry.dispatch(calls, buf, 3, f.length, args);
+        assertEquals(List.of("resize|1x2"), calls);
+    }
+
+    @Test
+    void unknownAndEmptyFramesGoToUnknownWithWholeFrame() {
+        byte[] f = frame((byte) 99, 5);
+        registry.dispatch(calls, f, 0, f.length, args);
+        registry.dispatch(calls, f, 0, 0, args);
+        assertEquals(List.of("unknown|9", "unknown|0"), calls);
+    }
+
+    @Test
+    void highCommandCodesAreUnsigned() {
+        byte[] f = frame(BinaryProtocol.EXIT);
+        assertFalse(registry.dispatch(calls, f, 0, f.length, args));
+        f = frame((byte) 0xFF);
+        assertTrue(registry.dispatch(calls, f, 0, f.length, args));
+        assertEquals(List.of("unknown|1"), calls);
+    }
+
+    @Test
+    void duplicateRegistrationIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.register(BinaryProtocol.GET_SWAP, "dup", (log, a) -> true));
+    }
+}
@@ -0,0 +1,172 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineReaderTest {
+
+    /** Поток, отдающий данные заданными порциями и тайм-аутами сокета между ними. */
+    private static final class ChunkedStream extends InputStream {
+        private final Deque<byte[]> chunks = new ArrayDeque<>();
+        private byte[] cur = new byte[0];
+        private int pos;
+
+        ChunkedStream add(byte[] chunk) {
+            chunks.add(chunk);
+            return this;
+        }
+
+        ChunkedStream add(String chunk) {
+            return add(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+
+        ChunkedStream timeout() {
+            chunks.add(TIMEOUT);
+            return this;
+        }
+
+        private static final byte[] TIMEOUT = new byte[0];
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (pos == cur.length) {
+                if (chunks.isEmpty()) return -1;
+                cur = chunks.poll();
+                pos = 0;
+                if (cur == TIMEOUT) {
+                    cur = new byte[0];
+                    throw new SocketTimeoutException("тайм-аут");
+                }
+            }
+            int n = Math.min(len, cur.length - pos);
+            System.arraycopy(cur, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    private static String line(LineReader r) {
+        return new String(r.array(), r.offset(), r.length(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void splitsLinesAndDropsCrLf() throws IOException {
+        LineReader r = new LineReader(new ByteArrayInputStream("/a 1\r\n\n/b\n/tail".getBytes(StandardCharsets.UTF_8)), 64);
+        assertTrue(r.next());
+        assertEquals("/a 1", line(r));
+        assertTrue(r.ready());
+        assertTrue(r.next());
+        assertEquals("", line(r));
+        assertTrue(r.next());
+        assertEquals("/b", line(r));
+        // строка без перевода строки в конце потока не выдаётся
+        assertFalse(r.next());
+    }
+
+    @Test
+    void lineSplitAcrossReads() throws IOException {
+        LineReader r = new LineReader(new ChunkedStream().add("/res").add("ize 6").add("40 480\n/exit\n"), 64);
+        assertTrue(r.next());
+        assertEquals("/resize 640 480", line(r));
+        assertTrue(r.next());
+        assertEquals("/exit", line(r));
+    }
+
+    @Test
+    void longLinesGrowBufferUpToLimit() throws IOException {
+        String longLine = "x".repeat(3000);
+        LineReader r = new LineReader(new ByteArrayInputStream((longLine + "\n").getBytes(StandardCharsets.UTF_8)), 8192);
+        assertTrue(r.next());
+        assertEquals(longLine, line(r));
+    }
+
+    @Test
+    void lineOverLimitFails() {
+        LineReader r = new LineReader(new ByteArrayInputStream("x".repeat(5000).getBytes(StandardCharsets.UTF_8)), 4096);
+        assertThrows(IOException.class, r::next);
+    }
+
+    @Test
+    void manyShortLinesDoNotGrowPastLimit() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append("/l").append(i).append('\n');
+        LineReader r = new LineReader(new ChunkedStream().add(sb.toString()), 16);
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(r.next());
+            assertEquals("/l" + i, line(r));
+        }
+        assertFalse(r.next());
+    }
+
+    @Test
+    void partialLineSurvivesTimeout() throws IOException {
+        LineReader r = new LineReader(new ChunkedStream().add("/getswap\n/hist").timeout().add("ory 1 2\n"), 64);
+        assertTrue(r.next());
+        assertEquals("/getswap", line(r));
+        long readAt = r.lastReadNanos();
+        assertThrows(SocketTimeoutException.class, r::next);
+        assertTrue(r.hasPartial());
+        // тайм-аут не считается чтением: срок недочитанной строки идёт от последних байтов
+        assertEquals(readAt, r.lastReadNanos());
+        assertTrue(r.next());
+        assertEquals("/history 1 2", line(r));
+        assertFalse(r.hasPartial());
+    }
+
+    @Test
+    void idleTimeoutHasNoPartial() throws IOException {
+        LineReader r = new LineReader(new ChunkedStream().add("/a\n").timeout(), 64);
+        assertTrue(r.next());
+        assertThrows(SocketTimeoutException.class, r::next);
+        assertFalse(r.hasPartial());
+    }
+
+    @Test
+    void framesAfterTextAndPartialFrames() throws IOException {
+        ResponseEncoder e = new ResponseEncoder();
+        e.append(BinaryProtocol.SWITCH_COMMAND).append('\n');
+        byte[] head = e.toByteArray();
+        // кадр: длина 9, команда GET_SWAP, один long
+        byte[] frame = {0, 0, 0, 9, BinaryProtocol.GET_SWAP, 0, 0, 0, 0, 0, 0, 0, 42};
+        byte[] firstHalf = Arrays.copyOfRange(frame, 0, 3);
+        byte[] rest = Arrays.copyOfRange(frame, 3, frame.length);
+        LineReader r = new LineReader(new ChunkedStream().add(head).add(firstHalf).timeout().add(rest), 64);
+        assertTrue(r.next());
+        assertEquals(BinaryProtocol.SWITCH_COMMAND, line(r));
+        assertThrows(SocketTimeoutException.class, r::nextFrame);
+        assertTrue(r.hasPartial());
+        assertTrue(r.nextFrame());
+        assertEquals(9, r.length());
+        ByteSlice s = new ByteSlice(r.array(), r.offset() + 1, r.length() - 1);
+        assertEquals(BinaryProtocol.GET_SWAP, r.array()[r.offset()]);
+        assertEquals(42, s.readLong());
+        assertFalse(r.nextFrame());
+    }
+
+    @Test
+    void badFrameLengthFails() {
+        byte[] zero = {0, 0, 0, 0};
+        assertThrows(IOException.class, () -> new LineReader(new ByteArrayInputStream(zero), 64).nextFrame());
+        byte[] huge = {0, 0, 1, 0};
+        assertThrows(IOException.class, () -> new LineReader(new ByteArrayInputStream(huge), 64).nextFrame());
+    }
+}
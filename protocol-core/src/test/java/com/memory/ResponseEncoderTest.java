@@ -0,0 +1,61 @@
+package com.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResponseEncoderTest {
+
+    private static String size(long bytes) {
+        return new ResponseEncoder().appendSize(bytes).toString();
+    }
+
+    @Test
+    void bytesBelowKilobyte() {
+        assertEquals("0 B", size(0));
+        assertEquals("1023 B", size(1023));
+    }
+
+    @Test
+    void unitsAndTwoDecimals() {
+        assertEquals("1.00 KB", size(1024));
+        assertEquals("1.50 KB", size(1536));
+        assertEquals("1.00 MB", size(1L << 20));
+        assertEquals("2.25 GB", size((1L << 30) * 9 / 4));
+        assertEquals("8589934592.00 GB", size(Long.MAX_VALUE));
+    }
+
+    @Test
+    void roundingMatchesStringFormat() {
+        long[] units = {1L << 10, 1L << 20, 1L << 30};
+        String[] names = {"KB", "MB", "GB"};
+        for (int u = 0; u < units.length; u++) {
+            long unit = units[u];
+            // около границ сотых долей, где половина округляется вверх
+            for (long base = unit; base < unit * 1100; base += unit * 7 + 13) {
+                for (long d = -3; d <= 3; d++) {
+                    long bytes = base + unit / 200 + d;
+                    if (bytes < unit || (u + 1 < units.length && bytes >= units[u + 1])) continue;
+                    String expected = String.format(Locale.ROOT, "%.2f %s", bytes / (double) unit, names[u]);
+                    assertEquals(expected, size(bytes), "bytes=" + bytes);
+                }
+            }
+        }
+    }
+
+    @Test
+    void numbersAndFrames() {
+        ResponseEncoder e = new ResponseEncoder();
+        e.append(Long.MIN_VALUE).append(' ').append(0).append(' ').append(-42).endLine();
+        assertEquals("-9223372036854775808 0 -42\n", e.toString());
+        e.reset();
+        e.beginFrame(BinaryProtocol.GET_SWAP, BinaryProtocol.OK).putLong(1).endFrame();
+        byte[] b = e.toByteArray();
+        assertEquals(4 + 2 + 8, b.length);
+        assertEquals(10, b[3]);
+        assertEquals(BinaryProtocol.GET_SWAP, b[4]);
+        assertEquals(1, b[13]);
+    }
+}